@@ -1,52 +1,118 @@
 package com.wannawalk.backend.config;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.wannawalk.backend.model.ChatMessage;
 import com.wannawalk.backend.model.User;
 import com.wannawalk.backend.dto.PresenceUpdatePayload;
+import com.wannawalk.backend.dto.UserSummary;
 import com.wannawalk.backend.dto.WebSocketMessage;
-import com.wannawalk.backend.repository.ChatMessageRepository;
 import com.wannawalk.backend.service.ActiveUserTracker;
+import com.wannawalk.backend.service.ChatMessageWriter;
+import com.wannawalk.backend.service.ChatNodeRegistry;
 import com.wannawalk.backend.service.NotificationService;
 import com.wannawalk.backend.service.ProfileService;
+import com.wannawalk.backend.service.UserSummaryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Chat and presence over WebSocket. Sessions are local to the node the client connected to;
+ * anything addressed to a user connected elsewhere is routed through {@link ChatNodeRegistry}
+ * to that node's Redis channel and delivered there.
+ * <p>
+ * Every session is wrapped in a {@link ConcurrentWebSocketSessionDecorator}, so concurrent sends
+ * are serialized and a thread that finds the session busy buffers its message and returns instead
+ * of waiting on a slow client. Presence updates are dropped once a session's buffer is half full;
+ * chat messages and events are always buffered, and a session that exceeds the buffer or send
+ * time limit is closed so the client reconnects and reloads history.
+ * Metrics: {@code chat.ws.session.buffer.total} (bytes buffered across sessions),
+ * {@code chat.ws.sessions.backed-up} (sessions over half their buffer), {@code chat.ws.presence.dropped}
+ * and {@code chat.ws.sessions.overflowed}. Which users are backed up is logged, not tagged, to keep
+ * the number of series fixed.
+ */
 @Component
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends TextWebSocketHandler implements MessageListener {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+    private static final String BACKED_UP_ATTRIBUTE = "backedUp";
 
-    private final ChatMessageRepository repo;
+    private final ChatMessageWriter messageWriter;
     private final ObjectMapper mapper;
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
     private final ActiveUserTracker activeUserTracker;
     private final NotificationService notificationService;
     private final ProfileService profileService;
+    private final UserSummaryService userSummaryService;
+    private final ChatNodeRegistry nodeRegistry;
+    private final boolean ackOnPersist;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimitBytes;
+    private final Counter presenceDropped;
+    private final Counter sessionsOverflowed;
 
-    public ChatWebSocketHandler(ChatMessageRepository repo,
+    public ChatWebSocketHandler(ChatMessageWriter messageWriter,
                                 ActiveUserTracker activeUserTracker,
                                 NotificationService notificationService,
-                                ProfileService profileService) {
-        this.repo = repo;
+                                ProfileService profileService,
+                                UserSummaryService userSummaryService,
+                                ChatNodeRegistry nodeRegistry,
+                                @Value("${app.chat.persistence.ack-on-persist}") boolean ackOnPersist,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.chat.ws.send-time-limit-ms}") int sendTimeLimitMillis,
+                                @Value("${app.chat.ws.buffer-size-limit-bytes}") int bufferSizeLimitBytes) {
+        this.messageWriter = messageWriter;
         this.activeUserTracker = activeUserTracker;
         this.notificationService = notificationService;
         this.profileService = profileService;
+        this.userSummaryService = userSummaryService;
+        this.nodeRegistry = nodeRegistry;
+        this.ackOnPersist = ackOnPersist;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimitBytes = bufferSizeLimitBytes;
+        this.presenceDropped = meterRegistry.counter("chat.ws.presence.dropped");
+        this.sessionsOverflowed = meterRegistry.counter("chat.ws.sessions.overflowed");
+        Gauge.builder("chat.ws.session.buffer.total", sessions,
+                        all -> all.values().stream().mapToLong(ConcurrentWebSocketSessionDecorator::getBufferSize).sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.sessions.backed-up", sessions,
+                        all -> all.values().stream().filter(this::isBackedUp).count())
+                .register(meterRegistry);
         this.mapper = new ObjectMapper();
         this.mapper.registerModule(new JavaTimeModule());
     }
 
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeToNodeChannel() {
+        nodeRegistry.subscribe(this);
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String userId = (String) session.getAttributes().get("userId");
@@ -54,9 +120,12 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Missing userId"));
             return;
         }
-        sessions.put(userId, session);
-        // Track general online status; "active in chat" is handled via presence updates.
-        activeUserTracker.userConnected(userId);
+        ConcurrentWebSocketSessionDecorator outbound = new ConcurrentWebSocketSessionDecorator(
+                session, sendTimeLimitMillis, bufferSizeLimitBytes,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+        sessions.put(userId, outbound);
+        // Online status on every node; "active in chat" is handled via presence updates.
+        nodeRegistry.register(userId);
         logger.info("User {} connected. Total sessions: {}", userId, sessions.size());
         // NOTE: Do NOT broadcast here (keeps behavior identical to your working version).
     }
@@ -105,30 +174,35 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             snapshot.put("userId", chatWith);
             snapshot.put("isActive", peerInThisChat);             // true if peer is active AND in this chat with me
             snapshot.put("chatWith", peerInThisChat ? userId : null);
-            sendJson(userId, snapshot);
+            sendJson(userId, snapshot, true);
         }
     }
 
     private void handleChatMessage(String senderId, WebSocketMessage wsMessage) throws IOException {
-        // Convert payload to your entity and persist
+        // Convert payload to your entity and hand it to the writer (write-behind unless configured sync)
         ChatMessage chatMessage = mapper.treeToValue(wsMessage.getPayload(), ChatMessage.class);
+        if (chatMessage.getTo() == null || chatMessage.getTo().isBlank()) {
+            logger.warn("Dropping chat message from {} without a recipient", senderId);
+            return;
+        }
+        // Sender, time, id and conversation are the server's to assign, whatever the client sent
         chatMessage.setFrom(senderId);
         chatMessage.setTimestamp(Instant.now());
-        logger.info("Saving message to DB: {}", chatMessage);
-        repo.save(chatMessage);
+        chatMessage.setId(null);
+        chatMessage.setConversationId(null);
+        // Throws if the message could not be stored (sync mode or a full queue), so it is not delivered
+        messageWriter.persist(chatMessage, ackOnPersist ? () -> sendAck(senderId, chatMessage) : null);
+        logger.debug("Queued message {} from {} to {}", chatMessage.getId(), senderId, chatMessage.getTo());
 
         String recipientId = chatMessage.getTo();
-        WebSocketSession recipientSession = sessions.get(recipientId);
 
         // Try to deliver via WebSocket (raw ChatMessage for backward compatibility)
-        if (recipientSession != null && recipientSession.isOpen()) {
-            recipientSession.sendMessage(new TextMessage(mapper.writeValueAsString(chatMessage)));
-        }
+        deliver(List.of(recipientId), mapper.writeValueAsString(chatMessage), false);
 
         // Push notifications if recipient is not actively viewing THIS chat
         boolean recipientWatchingThisChat = activeUserTracker.isUserActiveInChat(recipientId, senderId);
         if (!recipientWatchingThisChat) {
-            User sender = profileService.findUserById(senderId);
+            UserSummary sender = userSummaryService.find(senderId);
             String senderName = (sender != null) ? sender.getDogName() : "Someone";
 
             // Use the new notification service method
@@ -152,24 +226,109 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
         String payload = mapper.writeValueAsString(statusUpdate);
 
-        for (User friend : friends) {
-            WebSocketSession friendSession = sessions.get(friend.getId().toString());
-            if (friendSession != null && friendSession.isOpen()) {
-                friendSession.sendMessage(new TextMessage(payload));
+        deliver(friends.stream().map(User::getId).toList(), payload, true);
+    }
+
+    /**
+     * Tells the sender their message is stored, so clients can tell delivered from durable.
+     */
+    private void sendAck(String senderId, ChatMessage chatMessage) {
+        Map<String, Object> ack = new LinkedHashMap<>();
+        ack.put("event", "message_ack");
+        ack.put("id", chatMessage.getId());
+        ack.put("to", chatMessage.getTo());
+        ack.put("timestamp", chatMessage.getTimestamp());
+        sendEventToUser(senderId, ack);
+    }
+
+    private void sendJson(String toUserId, Object obj, boolean droppable) throws IOException {
+        deliver(List.of(toUserId), mapper.writeValueAsString(obj), droppable);
+    }
+
+    /**
+     * Sends the payload to each user's session: directly if it is on this node, otherwise with
+     * one publish per node that holds any of the remaining users. Users without a session
+     * anywhere are skipped, as before. {@code droppable} marks presence updates, which a backed-up
+     * session may skip.
+     */
+    private void deliver(Collection<String> userIds, String payload, boolean droppable) throws IOException {
+        List<String> remote = new ArrayList<>();
+        for (String userId : userIds) {
+            if (!sendLocal(userId, payload, droppable)) {
+                remote.add(userId);
+            }
+        }
+        if (remote.isEmpty()) return;
+
+        try {
+            Map<String, List<String>> usersByNode = new HashMap<>();
+            nodeRegistry.nodesOf(remote).forEach((userId, nodeId) -> {
+                if (!nodeId.equals(nodeRegistry.getNodeId())) {
+                    usersByNode.computeIfAbsent(nodeId, n -> new ArrayList<>()).add(userId);
+                }
+            });
+            for (Map.Entry<String, List<String>> node : usersByNode.entrySet()) {
+                Map<String, Object> routed = Map.of("userIds", node.getValue(), "payload", payload, "droppable", droppable);
+                nodeRegistry.publish(node.getKey(), mapper.writeValueAsString(routed));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to route message to {} users on other nodes: {}", remote.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether the user is connected to this node, whether or not the message was sent.
+     */
+    private boolean sendLocal(String userId, String payload, boolean droppable) throws IOException {
+        ConcurrentWebSocketSessionDecorator s = sessions.get(userId);
+        if (s == null || !s.isOpen()) return false;
+        if (isBackedUp(s)) {
+            if (s.getAttributes().putIfAbsent(BACKED_UP_ATTRIBUTE, Boolean.TRUE) == null) {
+                logger.warn("WebSocket session of user {} is backed up: {} bytes buffered", userId, s.getBufferSize());
+            }
+            if (droppable) {
+                presenceDropped.increment();
+                return true;
             }
+        } else if (s.getAttributes().remove(BACKED_UP_ATTRIBUTE) != null) {
+            logger.info("WebSocket session of user {} caught up", userId);
         }
+        try {
+            s.sendMessage(new TextMessage(payload));
+        } catch (SessionLimitExceededException e) {
+            // The decorator has closed the session; the client reconnects and reloads history
+            sessionsOverflowed.increment();
+            logger.warn("Closed slow WebSocket session of user {}: {}", userId, e.getMessage());
+        }
+        return true;
     }
 
-    private void sendJson(String toUserId, Object obj) throws IOException {
-        WebSocketSession s = sessions.get(toUserId);
-        if (s == null || !s.isOpen()) return;
-        s.sendMessage(new TextMessage(mapper.writeValueAsString(obj)));
+    // Past half the buffer a session skips presence updates
+    private boolean isBackedUp(ConcurrentWebSocketSessionDecorator session) {
+        return session.getBufferSize() > bufferSizeLimitBytes / 2;
+    }
+
+    /**
+     * Receives messages other nodes routed to users connected here.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode routed = mapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            String payload = routed.get("payload").asText();
+            boolean droppable = routed.path("droppable").asBoolean(false);
+            for (JsonNode userId : routed.get("userIds")) {
+                sendLocal(userId.asText(), payload, droppable);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to deliver routed message: {}", e.getMessage());
+        }
     }
 
     public void sendEventToUser(String userId, Map<String, Object> payload) {
         try {
             // Re-uses your existing private method
-            sendJson(userId, payload);
+            sendJson(userId, payload, false);
         } catch (IOException e) {
             logger.error("Failed to send event to user {}: {}", userId, e.getMessage());
         }
@@ -179,8 +338,14 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String userId = (String) session.getAttributes().get("userId");
         if (userId != null) {
-            sessions.remove(userId);
-            activeUserTracker.userDisconnected(userId);
+            ConcurrentWebSocketSessionDecorator current = sessions.get(userId);
+            if (current == null || current.getDelegate() != session || !sessions.remove(userId, current)) {
+                // A newer session of this user replaced this one and stays registered
+                logger.info("Replaced session of user {} closed. Reason: {}", userId, status);
+                return;
+            }
+            // Also clears the user's presence, unless they reconnected elsewhere
+            nodeRegistry.unregister(userId);
             // Let friends know this user is no longer active/in this chat
             try {
                 broadcastStatusChangeToFriends(userId, false, null);
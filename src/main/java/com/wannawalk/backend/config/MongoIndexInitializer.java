@@ -0,0 +1,55 @@
+package com.wannawalk.backend.config;
+
+import com.wannawalk.backend.model.ChatMessage;
+import com.wannawalk.backend.model.ChatMessageBucket;
+import com.wannawalk.backend.model.Comment;
+import com.wannawalk.backend.model.Post;
+import com.wannawalk.backend.model.PostLike;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on our documents ({@code @CompoundIndex}, {@code @Indexed}) once the
+ * application is up. Spring's auto-index-creation stays off so startup never blocks on MongoDB;
+ * this runs on a background thread and only logs if the database is not reachable.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    // Documents whose annotated indexes should be ensured at startup
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(Post.class, PostLike.class, Comment.class,
+            ChatMessage.class, ChatMessageBucket.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexesInBackground() {
+        Thread indexer = new Thread(() -> {
+            IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+            for (Class<?> document : INDEXED_DOCUMENTS) {
+                try {
+                    resolver.resolveIndexFor(document)
+                            .forEach(index -> mongoTemplate.indexOps(document).ensureIndex(index));
+                } catch (Exception e) {
+                    log.error("Could not ensure indexes for {}: {}", document.getSimpleName(), e.getMessage());
+                }
+            }
+        }, "mongo-index-init");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+}
@@ -8,6 +8,10 @@ import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+/**
+ * Standalone Redis only. Several stores rely on pipelines, MULTI/WATCH and scripts whose keys
+ * belong to different users, none of which a Jedis cluster connection supports.
+ */
 @Configuration
 public class RedisConfig {
 
@@ -30,6 +34,8 @@ public class RedisConfig {
         // Use String serializer for keys and values for better readability in Redis CLI
         template.setKeySerializer(new StringRedisSerializer());
         template.setValueSerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
         return template;
     }
 }
@@ -5,11 +5,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page; // Import Page
 import org.springframework.data.domain.PageRequest; // Import PageRequest
 import org.springframework.data.domain.Pageable; // Import Pageable
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.web.bind.annotation.*;
 
 import com.wannawalk.backend.model.ChatMessage;
 import com.wannawalk.backend.repository.ChatMessageRepository;
+import com.wannawalk.backend.service.ChatHistoryService;
 
 import java.util.List;
 
@@ -17,11 +19,16 @@ import java.util.List;
 @RequestMapping("/api/chat")
 public class ChatController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ChatMessageRepository repo;
+    private final ChatHistoryService chatHistoryService;
     private final String jwtSecret;
 
-    public ChatController(ChatMessageRepository repo, @Value("${app.jwtSecret}") String jwtSecret) {
+    public ChatController(ChatMessageRepository repo, ChatHistoryService chatHistoryService,
+                          @Value("${app.jwtSecret}") String jwtSecret) {
         this.repo = repo;
+        this.chatHistoryService = chatHistoryService;
         this.jwtSecret = jwtSecret;
     }
 
@@ -32,12 +39,7 @@ public class ChatController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "100") int size) { // Accept page and size
 
-        String token = auth.replace("Bearer ", "");
-        String userId = Jwts.parser()
-                .setSigningKey(jwtSecret.getBytes())
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        String userId = userIdOf(auth);
 
         // Create a Pageable object, sorting by timestamp DESC to get the newest messages first
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
@@ -45,4 +47,27 @@ public class ChatController {
         // Call the updated repository method
         return repo.findConversationBetween(userId, friendId, pageable);
     }
+
+    /**
+     * Newest messages first. For older messages pass the id of the oldest message already
+     * loaded as {@code before}; {@code hasNext} tells whether there is more.
+     */
+    @GetMapping("/messages/{friendId}")
+    public Slice<ChatMessage> getMessages(
+            @RequestHeader("Authorization") String auth,
+            @PathVariable String friendId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return chatHistoryService.getHistory(userIdOf(auth), friendId, before, pageSize);
+    }
+
+    private String userIdOf(String auth) {
+        String token = auth.replace("Bearer ", "");
+        return Jwts.parser()
+                .setSigningKey(jwtSecret.getBytes())
+                .parseClaimsJws(token)
+                .getBody()
+                .getSubject();
+    }
 }
\ No newline at end of file
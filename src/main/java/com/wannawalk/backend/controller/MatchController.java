@@ -1,9 +1,12 @@
 package com.wannawalk.backend.controller;
 
+import com.wannawalk.backend.dto.CursorPage;
 import com.wannawalk.backend.dto.SwipeRequest;
 import com.wannawalk.backend.dto.UpdateLocationRequest;
 import com.wannawalk.backend.dto.UserDto;
 import com.wannawalk.backend.security.UserPrincipal;
+import com.wannawalk.backend.service.LocationIngestService;
+import com.wannawalk.backend.service.MatchDeckService;
 import com.wannawalk.backend.service.MatchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -18,9 +21,17 @@ import java.util.Map;
 @CrossOrigin(origins = "*") // In a real app, configure this more securely
 public class MatchController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private MatchService matchService;
 
+    @Autowired
+    private MatchDeckService matchDeckService;
+
+    @Autowired
+    private LocationIngestService locationIngestService;
+
     /**
      * Updates the location for the currently authenticated user.
      * User ID is retrieved from the security principal to ensure security.
@@ -30,7 +41,8 @@ public class MatchController {
             @RequestBody UpdateLocationRequest request,
             @AuthenticationPrincipal UserPrincipal currentUser) {
         // Get user ID from the security context to ensure users can only update their own location.
-        matchService.updateLocation(currentUser.getId(), request.getLongitude(), request.getLatitude());
+        // Accepted asynchronously: redundant updates are dropped and the rest written in batches.
+        locationIngestService.submit(currentUser.getId(), request.getLongitude(), request.getLatitude());
         return ResponseEntity.ok("Location updated");
     }
 
@@ -52,6 +64,38 @@ public class MatchController {
         return ResponseEntity.ok(matches);
     }
 
+    /**
+     * Paged variant of {@link #getMatches}: candidates come nearest first with their distance,
+     * at most {@code limit} per call. Pass the returned {@code nextCursor} to continue.
+     */
+    @GetMapping("/matches/page")
+    public ResponseEntity<CursorPage<UserDto>> getMatchPage(
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            @RequestParam(defaultValue = "20") double radius,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) List<String> breeds,
+            @RequestParam(required = false) List<String> personality,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CursorPage<UserDto> page = matchService.getMatchPage(
+                currentUser.getId(), radius, minAge, maxAge, breeds, personality, pageSize, cursor);
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * Serves the next cards from the user's pre-computed deck, built with their saved filters.
+     * Falls back to a live query when no fresh deck is available.
+     */
+    @GetMapping("/deck")
+    public ResponseEntity<List<UserDto>> getDeck(
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            @RequestParam(defaultValue = "10") int count) {
+        int pageSize = Math.max(1, Math.min(count, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(matchDeckService.takeFromDeck(currentUser.getId(), pageSize));
+    }
+
     /**
      * Handles a swipe action (like/dislike) from the currently authenticated user.
      */
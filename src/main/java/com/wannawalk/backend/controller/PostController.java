@@ -1,28 +1,46 @@
 package com.wannawalk.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.wannawalk.backend.dto.CommentRequest;
+import com.wannawalk.backend.dto.CommentResponse;
+import com.wannawalk.backend.dto.CursorPage;
+import com.wannawalk.backend.dto.FeedDelta;
 import com.wannawalk.backend.dto.PostRequest;
 import com.wannawalk.backend.dto.PostResponse;
-import com.wannawalk.backend.model.Comment;
+import com.wannawalk.backend.errors.InvalidCursorException;
 import com.wannawalk.backend.security.UserPrincipal;
 import com.wannawalk.backend.service.PostService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/posts")
 public class PostController {
 
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     @Autowired
     private PostService postService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping
     public ResponseEntity<PostResponse> createPost(@AuthenticationPrincipal UserPrincipal currentUser, @RequestBody PostRequest postRequest) {
         PostResponse newPost = postService.createPost(currentUser.getId(), postRequest);
@@ -35,22 +53,88 @@ public class PostController {
         return ResponseEntity.ok(feed);
     }
 
+    /**
+     * Keyset-paginated home feed. Pass the previous page's {@code nextCursor} as {@code before}.
+     */
+    @GetMapping("/feed/page")
+    public ResponseEntity<CursorPage<PostResponse>> getFeedPage(
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(postService.getFeedPage(currentUser.getId(), before, pageSize));
+    }
+
+    /**
+     * Cheap pull-to-refresh: only the feed posts created or changed since the client's cursor,
+     * passed as {@code since} or as the ETag in If-None-Match. Answers 304 when nothing changed.
+     */
+    @GetMapping("/feed/delta")
+    public ResponseEntity<FeedDelta> getFeedDelta(
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            @RequestParam(required = false) String since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestParam(defaultValue = "50") int limit) {
+        String cursor = since != null ? since : etagValue(ifNoneMatch);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        FeedDelta delta;
+        try {
+            delta = postService.getFeedDelta(currentUser.getId(), cursor, pageSize);
+        } catch (InvalidCursorException e) {
+            // A bad since is the client's error (400); an ETag we did not issue just means no baseline
+            if (since != null || cursor == null) throw e;
+            cursor = null;
+            delta = postService.getFeedDelta(currentUser.getId(), null, pageSize);
+        }
+
+        if (cursor != null && delta.getPosts().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cursor).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (delta.getCursor() != null) {
+            response.eTag(delta.getCursor());
+        }
+        return response.body(delta);
+    }
+
+    /**
+     * Streaming variant of {@code /feed}: one PostResponse JSON object per line, written as the
+     * posts are read, so large feeds neither build up in memory nor delay the first byte.
+     */
+    @GetMapping(value = "/feed/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamFeed(@AuthenticationPrincipal UserPrincipal currentUser) {
+        String userId = currentUser.getId();
+        return ndjson(sink -> postService.streamFeedForUser(userId, sink));
+    }
+
+    @GetMapping(value = "/me/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamMyPosts(@AuthenticationPrincipal UserPrincipal currentUser) {
+        String userId = currentUser.getId();
+        return ndjson(sink -> postService.streamPostsForUser(userId, userId, sink));
+    }
+
+    @GetMapping(value = "/user/{userId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamPostsByUserId(@AuthenticationPrincipal UserPrincipal currentUser, @PathVariable String userId) {
+        String viewerId = currentUser.getId();
+        return ndjson(sink -> postService.streamPostsForUser(userId, viewerId, sink));
+    }
+
     // --- NEW: Endpoint to get a single post by its ID ---
     @GetMapping("/{postId}")
-    public ResponseEntity<PostResponse> getPostById(@PathVariable String postId) {
-        PostResponse post = postService.getPostById(postId);
+    public ResponseEntity<PostResponse> getPostById(@AuthenticationPrincipal UserPrincipal currentUser, @PathVariable String postId) {
+        PostResponse post = postService.getPostById(postId, currentUser.getId());
         return ResponseEntity.ok(post);
     }
 
     @GetMapping("/me")
     public ResponseEntity<List<PostResponse>> getMyPosts(@AuthenticationPrincipal UserPrincipal currentUser) {
-        List<PostResponse> posts = postService.getPostsForUser(currentUser.getId());
+        List<PostResponse> posts = postService.getPostsForUser(currentUser.getId(), currentUser.getId());
         return ResponseEntity.ok(posts);
     }
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<PostResponse>> getPostsByUserId(@PathVariable String userId) {
-        List<PostResponse> posts = postService.getPostsForUser(userId);
+    public ResponseEntity<List<PostResponse>> getPostsByUserId(@AuthenticationPrincipal UserPrincipal currentUser, @PathVariable String userId) {
+        List<PostResponse> posts = postService.getPostsForUser(userId, currentUser.getId());
         return ResponseEntity.ok(posts);
     }
 
@@ -60,9 +144,21 @@ public class PostController {
         return ResponseEntity.ok(Map.of("liked", isLiked));
     }
 
+    /**
+     * A post's comments, newest first. Pass the previous page's {@code nextCursor} as {@code before}.
+     */
+    @GetMapping("/{postId}/comments")
+    public ResponseEntity<CursorPage<CommentResponse>> getComments(
+            @PathVariable String postId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(postService.getComments(postId, before, pageSize));
+    }
+
     @PostMapping("/{postId}/comments")
-    public ResponseEntity<Comment> addComment(@AuthenticationPrincipal UserPrincipal currentUser, @PathVariable String postId, @Valid @RequestBody CommentRequest commentRequest) {
-        Comment newComment = postService.addComment(currentUser.getId(), postId, commentRequest);
+    public ResponseEntity<CommentResponse> addComment(@AuthenticationPrincipal UserPrincipal currentUser, @PathVariable String postId, @Valid @RequestBody CommentRequest commentRequest) {
+        CommentResponse newComment = postService.addComment(currentUser.getId(), postId, commentRequest);
         return ResponseEntity.ok(newComment);
     }
 
@@ -77,5 +173,38 @@ public class PostController {
             return ResponseEntity.status(404).body(Map.of("error", e.getMessage())); // Not Found
         }
     }
-}
 
+    /**
+     * Writes every chunk the producer emits as newline-delimited JSON, flushing after each chunk.
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<List<PostResponse>>> producer) {
+        StreamingResponseBody body = out -> producer.accept(chunk -> writeChunk(out, chunk));
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private void writeChunk(OutputStream out, List<PostResponse> chunk) {
+        try {
+            for (PostResponse post : chunk) {
+                out.write(objectMapper.writeValueAsBytes(post));
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Usually the client went away; abort reading the cursor
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // If-None-Match carries the quoted (possibly weak) ETag; the cursor is what's inside the quotes
+    private String etagValue(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return null;
+        String value = ifNoneMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,16 @@
+package com.wannawalk.backend.dto;
+
+import lombok.Data;
+import java.time.Instant;
+
+// A DTO to represent a comment in API responses, with its author's summary
+@Data
+public class CommentResponse {
+    private String id;
+    private String postId;
+    private String authorId;
+    private String authorUsername;
+    private String authorProfilePicUrl;
+    private String text;
+    private Instant createdAt;
+}
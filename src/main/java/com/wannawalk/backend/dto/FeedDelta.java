@@ -0,0 +1,21 @@
+package com.wannawalk.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Feed posts created or changed (likes, comments) since the client's last refresh, oldest change
+ * first. Pass {@code cursor} back as {@code since} (or as If-None-Match, it is also the ETag) on
+ * the next refresh; {@code hasMore} means the next call will return more changes right away.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeedDelta {
+    private List<PostResponse> posts;
+    private String cursor;
+    private boolean hasMore;
+}
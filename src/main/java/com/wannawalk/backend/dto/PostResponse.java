@@ -3,9 +3,6 @@ package com.wannawalk.backend.dto;
 import lombok.Data;
 import java.time.Instant;
 import java.util.List;
-import java.util.Set;
-
-import com.wannawalk.backend.model.Comment;
 
 // A DTO to represent a post in API responses, including likes and comments
 @Data
@@ -18,7 +15,9 @@ public class PostResponse {
     private String imageUrl;
     private String location;
     private List<String> taggedFriends;
-    private Set<String> likes; // User IDs of who liked the post
-    private List<Comment> comments;
+    private long likeCount;
+    private boolean likedByViewer; // Whether the requesting user liked the post
+    private long commentCount;
+    private List<CommentResponse> latestComments; // The newest few comments, see GET /api/posts/{postId}/comments for all
     private Instant createdAt;
 }
\ No newline at end of file
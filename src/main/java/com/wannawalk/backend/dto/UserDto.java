@@ -21,4 +21,5 @@ public class UserDto {
     private String imageUrl;
     private List<String> personality;
     private String matchPreferences;
+    private Double distanceKm; // Distance from the requesting user, when known
 }
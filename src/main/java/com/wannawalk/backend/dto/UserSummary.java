@@ -0,0 +1,15 @@
+package com.wannawalk.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The few user fields shown next to posts, comments and friends
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummary {
+    private String id;
+    private String dogName;
+    private String profilePicUrl;
+}
@@ -0,0 +1,10 @@
+package com.wannawalk.backend.errors;
+
+/**
+ * Thrown when adding a friend who is already in the user's friend list.
+ */
+public class AlreadyFriendsException extends FriendServiceException {
+    public AlreadyFriendsException(String message) {
+        super(message);
+    }
+}
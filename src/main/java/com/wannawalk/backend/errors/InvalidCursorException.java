@@ -0,0 +1,11 @@
+package com.wannawalk.backend.errors;
+
+/**
+ * Thrown when a client sends a paging cursor the server did not issue or can no longer resolve.
+ * Mapped to 400 Bad Request by {@link RestExceptionHandler}.
+ */
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String cursor) {
+        super("Invalid cursor: " + cursor);
+    }
+}
@@ -0,0 +1,16 @@
+package com.wannawalk.backend.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by {@link com.wannawalk.backend.service.FriendService} after two users became friends
+ * or stopped being friends.
+ */
+@Getter
+@AllArgsConstructor
+public class FriendshipChangedEvent {
+    private final String userId;
+    private final String friendId;
+    private final boolean added;
+}
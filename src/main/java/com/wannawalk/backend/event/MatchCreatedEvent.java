@@ -0,0 +1,16 @@
+package com.wannawalk.backend.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published exactly once per mutual match, right after the swipe script created it.
+ * Handled by {@link com.wannawalk.backend.service.MatchSideEffectService}.
+ */
+@Getter
+@AllArgsConstructor
+public class MatchCreatedEvent {
+    // The user whose right swipe completed the match
+    private final String userId;
+    private final String matchedUserId;
+}
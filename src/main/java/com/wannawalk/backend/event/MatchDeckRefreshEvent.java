@@ -0,0 +1,24 @@
+package com.wannawalk.backend.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Published whenever the inputs of pre-computed match decks change (location, filters) or a deck
+ * runs low. Batches of users (e.g. one location flush) go in a single event, so their rebuilds
+ * are throttled in one round trip. Handled by {@link com.wannawalk.backend.service.MatchDeckService}.
+ */
+@Getter
+@AllArgsConstructor
+public class MatchDeckRefreshEvent {
+    private final Collection<String> userIds;
+    // Forced refreshes skip the rebuild throttle, e.g. after the user changed their filters
+    private final boolean force;
+
+    public MatchDeckRefreshEvent(String userId, boolean force) {
+        this(List.of(userId), force);
+    }
+}
@@ -1,6 +1,7 @@
 package com.wannawalk.backend.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.Getter;
@@ -9,6 +10,7 @@ import lombok.Setter;
 import java.time.Instant;
 
 @Document("messages")
+@CompoundIndex(name = "conversation_timestamp", def = "{'conversationId': 1, 'timestamp': -1, '_id': -1}")
 @Getter
 @Setter
 public class ChatMessage {
@@ -16,6 +18,8 @@ public class ChatMessage {
     private String id;
     private String from;
     private String to;
+    // Same for both directions, see conversationIdOf
+    private String conversationId;
     private String message;
     private Instant timestamp;
 
@@ -29,5 +33,12 @@ public class ChatMessage {
         this.timestamp = Instant.now();
     }
 
+    /**
+     * Normalized id of the conversation between two users: both ids in ascending order.
+     */
+    public static String conversationIdOf(String userId, String otherUserId) {
+        return userId.compareTo(otherUserId) < 0 ? userId + ":" + otherUserId : otherUserId + ":" + userId;
+    }
+
     // Getters and setters omitted for brevity (use Lombok if you're smart)
 }
\ No newline at end of file
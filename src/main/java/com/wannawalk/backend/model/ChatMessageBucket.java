@@ -0,0 +1,44 @@
+package com.wannawalk.backend.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All messages of one conversation within one time window, used when chat storage is in
+ * {@code buckets} mode. A history page then reads a few bucket documents instead of one document
+ * (and one index entry) per message. The id is derived from the conversation and window, so
+ * writers can append with an upsert without looking the bucket up first.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "message_buckets")
+@CompoundIndex(name = "conversation_bucketStart", def = "{'conversationId': 1, 'bucketStart': -1}")
+public class ChatMessageBucket {
+
+    @Id
+    private String id;
+
+    private String conversationId;
+
+    private Instant bucketStart;
+
+    // In append order, which is close to but not strictly timestamp order
+    private List<ChatMessage> messages = new ArrayList<>();
+
+    public static Instant bucketStartOf(Instant timestamp, Duration bucketSize) {
+        long millis = timestamp.toEpochMilli();
+        return Instant.ofEpochMilli(millis - Math.floorMod(millis, bucketSize.toMillis()));
+    }
+
+    public static String idOf(String conversationId, Instant bucketStart) {
+        return conversationId + ":" + bucketStart.toEpochMilli();
+    }
+}
@@ -1,27 +1,39 @@
 package com.wannawalk.backend.model;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Data
+@NoArgsConstructor
 @Document(collection = "comments")
+// Serves a post's comments, newest first, keyset-paginated on (createdAt, _id)
+@CompoundIndex(name = "post_createdAt", def = "{'postId': 1, 'createdAt': -1, '_id': -1}")
 public class Comment {
 
     @Id
     private String id;
 
-    @DBRef
+    private String postId;
+
+    // Only resolved when accessed; responses use authorId and a batched summary lookup instead
+    @DBRef(lazy = true)
     private User author;
 
+    private String authorId;
+
     private String text;
 
     private Instant createdAt = Instant.now();
 
-    public Comment(User author, String text) {
+    public Comment(String postId, User author, String text) {
+        this.postId = postId;
         this.author = author;
+        this.authorId = author.getId();
         this.text = text;
     }
 }
@@ -0,0 +1,40 @@
+package com.wannawalk.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact projection of a {@link User} holding only what the match pipeline filters on
+ * and renders. Stored as a Redis hash so candidate filtering never has to load full user
+ * documents (password hash, friends, FCM tokens) from MongoDB.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchProfile {
+    private String id;
+    private String dogName;
+    private Date birthday;
+    private String breed;
+    private String profilePicUrl;
+    private List<String> personality;
+    private long personalityMask;
+    private String matchPreferences;
+
+    public static MatchProfile from(User user) {
+        return new MatchProfile(
+                user.getId(),
+                user.getDogName(),
+                user.getBirthday(),
+                user.getBreed(),
+                user.getProfilePicUrl(),
+                user.getPersonality(),
+                user.getPersonalityMask(),
+                user.getMatchPreferences()
+        );
+    }
+}
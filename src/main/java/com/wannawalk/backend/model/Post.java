@@ -2,24 +2,30 @@ package com.wannawalk.backend.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Data
 @Document(collection = "posts")
+// Serves the feed: posts of a set of authors, newest first, keyset-paginated on (createdAt, _id)
+@CompoundIndex(name = "author_createdAt", def = "{'author.$id': 1, 'createdAt': -1, '_id': -1}")
+// Serves feed deltas: posts of a set of authors with activity after a (lastActivityAt, _id) cursor
+@CompoundIndex(name = "author_lastActivityAt", def = "{'author.$id': 1, 'lastActivityAt': 1, '_id': 1}")
 public class Post {
 
     @Id
     private String id;
 
-    @DBRef
+    // Only resolved when accessed; responses use authorId and a batched summary lookup instead
+    @DBRef(lazy = true)
     private User author;
 
+    private String authorId;
+
     private String description;
 
     private String imageUrl; // Optional
@@ -28,11 +34,18 @@ public class Post {
 
     private List<String> taggedFriends = new ArrayList<>();
 
-    @DBRef
-    private Set<User> likes = new HashSet<>();
+    // Likes live in post_likes (see PostLike), this is their denormalized count
+    private long likeCount;
+
+    // Comments live in their own collection by postId; the post keeps their count and a copy of
+    // the newest few (oldest first) so feed entries need no extra query
+    private long commentCount;
 
-    @DBRef
-    private List<Comment> comments = new ArrayList<>();
+    private List<Comment> latestComments = new ArrayList<>();
 
     private Instant createdAt = Instant.now();
+
+    // Set on creation and bumped on every like or comment change, both from the database server's
+    // clock (see PostService); see the feed delta endpoint
+    private Instant lastActivityAt;
 }
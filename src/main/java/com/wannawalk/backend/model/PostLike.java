@@ -0,0 +1,33 @@
+package com.wannawalk.backend.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.Instant;
+
+/**
+ * One like of a post. Kept out of the post document so loading a post never depends on how many
+ * likes it has; the post only carries the denormalized {@link Post#getLikeCount()}.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "post_likes")
+@CompoundIndex(name = "post_user", def = "{'postId': 1, 'userId': 1}", unique = true)
+public class PostLike {
+
+    @Id
+    private String id;
+
+    private String postId;
+
+    private String userId;
+
+    private Instant createdAt = Instant.now();
+
+    public PostLike(String postId, String userId) {
+        this.postId = postId;
+        this.userId = userId;
+    }
+}
@@ -39,6 +39,8 @@ public class User {
     private String breed;
     private Date birthday;
     private List<String> personality;
+    // Bitset of the personality traits, see PersonalityTraitRegistry
+    private long personalityMask;
     private String matchPreferences;
 
     private Set<String> friends = new HashSet<>();
@@ -0,0 +1,19 @@
+package com.wannawalk.backend.repository;
+
+import com.wannawalk.backend.model.PostLike;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PostLikeRepository extends MongoRepository<PostLike, String> {
+    boolean existsByPostIdAndUserId(String postId, String userId);
+
+    long deleteByPostIdAndUserId(String postId, String userId);
+
+    List<PostLike> findByUserIdAndPostIdIn(String userId, Collection<String> postIds);
+
+    long countByPostId(String postId);
+}
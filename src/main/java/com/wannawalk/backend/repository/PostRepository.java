@@ -6,9 +6,6 @@ import org.springframework.stereotype.Repository;
 
 import com.wannawalk.backend.model.Post;
 
-import java.util.List;
-
 @Repository
 public interface PostRepository extends MongoRepository<Post, String> {
-    List<Post> findByAuthorIdOrderByCreatedAtDesc(String userId);
 }
@@ -29,6 +29,9 @@ public class AuthService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private MatchProfileStore matchProfileStore;
+
     @Value("${app.url}")
     private String appUrl;
 
@@ -57,7 +60,8 @@ public class AuthService {
         user.setConfirmationToken(token);
         user.setConfirmationTokenExpires(Instant.now().plusSeconds(86400));
 
-        userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        matchProfileStore.save(savedUser);
 
         String confirmationUrl = appUrl + "/api/auth/confirm/" + token;
         String emailContent = "<div style='font-family: Arial, sans-serif; text-align: center; padding: 20px;'>"
@@ -0,0 +1,163 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.errors.InvalidCursorException;
+import com.wannawalk.backend.model.ChatMessage;
+import com.wannawalk.backend.model.ChatMessageBucket;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Chat history read from the (conversationId, timestamp) index, newest first. Pages are keyset
+ * based: the client passes the id of the oldest message it already has, so a page costs the
+ * same however far back it is and no count query is run.
+ * <p>
+ * In {@code buckets} storage mode pages are made of whole {@link ChatMessageBucket}s, so a page
+ * can hold more than {@code limit} messages. Once the buckets run out, history continues from
+ * messages stored one per document before the mode was switched.
+ */
+@Service
+public class ChatHistoryService {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("timestamp"), Sort.Order.desc("_id"));
+    private static final Comparator<ChatMessage> NEWEST_FIRST_ORDER =
+            Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId).reversed();
+    // Buckets fetched per round trip; a page usually needs only one or two
+    private static final int BUCKET_BATCH_SIZE = 4;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.chat.storage.mode}")
+    private String storageMode;
+
+    @Value("${app.chat.storage.bucket-minutes}")
+    private long bucketMinutes;
+
+    public Slice<ChatMessage> getHistory(String userId, String friendId, String beforeMessageId, int limit) {
+        String conversationId = ChatMessage.conversationIdOf(userId, friendId);
+        boolean bucketed = "buckets".equalsIgnoreCase(storageMode);
+        ChatMessage cursor = null;
+        if (beforeMessageId != null && !beforeMessageId.isBlank()) {
+            cursor = findCursorMessage(conversationId, beforeMessageId, bucketed);
+        }
+
+        if (!bucketed) {
+            List<ChatMessage> messages = findMessages(conversationId, cursor, limit + 1);
+            boolean hasNext = messages.size() > limit;
+            return toSlice(hasNext ? messages.subList(0, limit) : messages, limit, hasNext);
+        }
+
+        List<ChatMessage> messages = new ArrayList<>();
+        boolean hasNext;
+        Query bucketQuery = bucketQuery(conversationId, cursor);
+        try (Stream<ChatMessageBucket> buckets = mongoTemplate.stream(bucketQuery, ChatMessageBucket.class)) {
+            Iterator<ChatMessageBucket> bucketIterator = buckets.iterator();
+            while (messages.size() < limit && bucketIterator.hasNext()) {
+                List<ChatMessage> bucketMessages = new ArrayList<>();
+                for (ChatMessage message : bucketIterator.next().getMessages()) {
+                    if (cursor == null || isOlder(message, cursor)) {
+                        bucketMessages.add(message);
+                    }
+                }
+                bucketMessages.sort(NEWEST_FIRST_ORDER);
+                messages.addAll(bucketMessages);
+            }
+            hasNext = bucketIterator.hasNext();
+        }
+
+        if (!hasNext) {
+            // Older messages may still be stored one per document; a full page only checks for one
+            int remaining = Math.max(limit - messages.size(), 0);
+            ChatMessage oldest = messages.isEmpty() ? cursor : messages.get(messages.size() - 1);
+            List<ChatMessage> older = findMessages(conversationId, oldest, remaining + 1);
+            hasNext = older.size() > remaining;
+            messages.addAll(hasNext ? older.subList(0, remaining) : older);
+        }
+        return toSlice(messages, limit, hasNext);
+    }
+
+    private List<ChatMessage> findMessages(String conversationId, ChatMessage before, int limit) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (before != null) {
+            criteria = new Criteria().andOperator(criteria, olderThan(before));
+        }
+        return mongoTemplate.find(new Query(criteria).with(NEWEST_FIRST).limit(limit), ChatMessage.class);
+    }
+
+    private Query bucketQuery(String conversationId, ChatMessage before) {
+        Criteria criteria = Criteria.where("conversationId").is(conversationId);
+        if (before != null) {
+            criteria.and("bucketStart").lte(ChatMessageBucket.bucketStartOf(before.getTimestamp(), bucketSize()));
+        }
+        return new Query(criteria)
+                .with(Sort.by(Sort.Order.desc("bucketStart")))
+                .cursorBatchSize(BUCKET_BATCH_SIZE);
+    }
+
+    /**
+     * Finds the message a page starts below. In bucket mode the id's timestamp points at the one
+     * bucket that can hold it; messages from before the switch are looked up as documents.
+     */
+    private ChatMessage findCursorMessage(String conversationId, String messageId, boolean bucketed) {
+        if (!ObjectId.isValid(messageId)) {
+            throw new InvalidCursorException(messageId);
+        }
+        if (bucketed) {
+            Instant createdAt = new ObjectId(messageId).getDate().toInstant();
+            String bucketId = ChatMessageBucket.idOf(conversationId, ChatMessageBucket.bucketStartOf(createdAt, bucketSize()));
+            ChatMessageBucket bucket = mongoTemplate.findById(bucketId, ChatMessageBucket.class);
+            if (bucket != null) {
+                for (ChatMessage message : bucket.getMessages()) {
+                    if (messageId.equals(message.getId())) return message;
+                }
+            }
+        }
+
+        Query query = new Query(Criteria.where("_id").is(messageId).and("conversationId").is(conversationId));
+        query.fields().include("_id").include("timestamp");
+        ChatMessage message = mongoTemplate.findOne(query, ChatMessage.class);
+        if (message == null) {
+            // Not a message of this conversation, so not a place to page from
+            throw new InvalidCursorException(messageId);
+        }
+        return message;
+    }
+
+    /**
+     * Keyset condition for messages ordered by (timestamp, _id) descending.
+     */
+    private Criteria olderThan(ChatMessage message) {
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").lt(message.getTimestamp()),
+                Criteria.where("timestamp").is(message.getTimestamp()).and("_id").lt(new ObjectId(message.getId())));
+    }
+
+    private static boolean isOlder(ChatMessage message, ChatMessage than) {
+        return NEWEST_FIRST_ORDER.compare(message, than) > 0;
+    }
+
+    private Duration bucketSize() {
+        return Duration.ofMinutes(bucketMinutes);
+    }
+
+    private Slice<ChatMessage> toSlice(List<ChatMessage> messages, int limit, boolean hasNext) {
+        return new SliceImpl<>(messages, PageRequest.of(0, limit, NEWEST_FIRST), hasNext);
+    }
+}
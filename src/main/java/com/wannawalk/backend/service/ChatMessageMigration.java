@@ -0,0 +1,63 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.model.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills {@code conversationId} on messages stored before that field existed, in the
+ * background at startup. Only messages without the field are touched, so it is safe to run on
+ * every start and on several instances at once.
+ */
+@Component
+@Slf4j
+public class ChatMessageMigration {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.chat.migrate-conversation-ids-on-startup}")
+    private boolean migrateOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!migrateOnStartup) return;
+        Thread migration = new Thread(() -> {
+            try {
+                long migrated = backfillConversationIds();
+                if (migrated > 0) {
+                    log.info("Set the conversation id on {} chat messages", migrated);
+                }
+            } catch (Exception e) {
+                log.error("Could not backfill chat conversation ids: {}", e.getMessage());
+            }
+        }, "chat-message-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    /**
+     * Sets {@code conversationId} the same way as {@link ChatMessage#conversationIdOf}, in one
+     * server-side update instead of reading every message into the application.
+     */
+    public long backfillConversationIds() {
+        Query legacy = new Query(Criteria.where("conversationId").exists(false)
+                .and("from").exists(true).and("to").exists(true));
+        AggregationUpdate update = AggregationUpdate.update().set("conversationId").toValue(
+                ConditionalOperators.when(ComparisonOperators.valueOf("from").lessThan("to"))
+                        .then(StringOperators.valueOf("from").concat(":").concatValueOf("to"))
+                        .otherwise(StringOperators.valueOf("to").concat(":").concatValueOf("from")));
+        return mongoTemplate.updateMulti(legacy, update, ChatMessage.class).getModifiedCount();
+    }
+}
@@ -0,0 +1,294 @@
+package com.wannawalk.backend.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.wannawalk.backend.model.ChatMessage;
+import com.wannawalk.backend.model.ChatMessageBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists chat messages. In {@code write-behind} mode (the default) messages are queued and
+ * written in batches of up to {@code batch-size} every {@code flush-interval-ms}, so the
+ * WebSocket thread never waits on Mongo; {@code sync} mode writes each message before returning
+ * and throws if it cannot, so an unstored message is never delivered. Ids are assigned up front so
+ * the delivered message already carries its final id. A full queue falls back to a single
+ * synchronous attempt, which throws like sync mode. A write-behind batch is never dropped: after
+ * {@code max-attempts} it is counted as failed and kept retrying at the longest backoff. With
+ * {@code app.chat.storage.mode=buckets} messages are appended to {@link ChatMessageBucket}s
+ * instead of being stored one document each.
+ * Metrics: {@code chat.persist.queue.depth}, {@code chat.persist.flush} (latency) and counters
+ * under {@code chat.persist.*}.
+ */
+@Service
+@Slf4j
+public class ChatMessageWriter {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean writeBehind;
+    private final boolean bucketed;
+    private final Duration bucketSize;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread flusher = new Thread(this::runFlusher, "chat-message-writer");
+    private volatile boolean running = true;
+
+    private final Timer flushTimer;
+    private final Counter written;
+    private final Counter overflowed;
+    private final Counter failed;
+
+    private record PendingMessage(ChatMessage message, Runnable onPersisted) {
+    }
+
+    public ChatMessageWriter(MongoTemplate mongoTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.chat.persistence.mode}") String mode,
+                             @Value("${app.chat.persistence.queue-capacity}") int queueCapacity,
+                             @Value("${app.chat.persistence.batch-size}") int batchSize,
+                             @Value("${app.chat.persistence.flush-interval-ms}") long flushIntervalMillis,
+                             @Value("${app.chat.persistence.max-attempts}") int maxAttempts,
+                             @Value("${app.chat.persistence.initial-backoff-ms}") long initialBackoffMillis,
+                             @Value("${app.chat.storage.mode}") String storageMode,
+                             @Value("${app.chat.storage.bucket-minutes}") long bucketMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.writeBehind = !"sync".equalsIgnoreCase(mode);
+        this.bucketed = "buckets".equalsIgnoreCase(storageMode);
+        this.bucketSize = Duration.ofMinutes(bucketMinutes);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushTimer = meterRegistry.timer("chat.persist.flush");
+        this.written = meterRegistry.counter("chat.persist.written");
+        this.overflowed = meterRegistry.counter("chat.persist.overflow");
+        this.failed = meterRegistry.counter("chat.persist.failed");
+        meterRegistry.gauge("chat.persist.queue.depth", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!writeBehind) return;
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Drains what is still queued before the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher.isAlive()) {
+            flusher.join(10_000);
+        }
+    }
+
+    /**
+     * Fills in the message's id and timestamp if missing, sets its conversation id from sender and
+     * recipient, and stores it, either right away or on the next flush. {@code onPersisted} (may be
+     * null) runs once the message is durably written.
+     */
+    public void persist(ChatMessage message, Runnable onPersisted) {
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(Instant.now());
+        }
+        if (message.getId() == null) {
+            // Seconds of the id match the timestamp, so the id alone tells which bucket holds the message
+            message.setId(new ObjectId(Date.from(message.getTimestamp())).toHexString());
+        }
+        message.setConversationId(ChatMessage.conversationIdOf(message.getFrom(), message.getTo()));
+        PendingMessage pending = new PendingMessage(message, onPersisted);
+        if (!writeBehind) {
+            flushOrThrow(List.of(pending), maxAttempts);
+            return;
+        }
+        if (queue.offer(pending)) {
+            return;
+        }
+        overflowed.increment();
+        log.warn("Chat write-behind queue is full, writing message {} synchronously", message.getId());
+        // One attempt only: retrying with backoff would hold up the WebSocket thread
+        flushOrThrow(List.of(pending), 1);
+    }
+
+    private void runFlusher() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Give the batch up to one flush interval to fill
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) break;
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flushUntilWritten(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Chat write-behind flush failed: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write-behind: retries the batch until it is written, keeping it rather than dropping it when
+     * Mongo is down. Only a shutdown gives up on it, once {@code max-attempts} are used.
+     */
+    private void flushUntilWritten(List<PendingMessage> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == maxAttempts) {
+                    failed.increment(batch.size());
+                    log.error("Writing {} chat messages failed {} times, keeping them queued: {}",
+                            batch.size(), attempt, e.getMessage());
+                }
+                if (!running && attempt >= maxAttempts) {
+                    log.error("Shutting down with {} unwritten chat messages", batch.size() + queue.size());
+                    return;
+                }
+                long backoff = backoffMillis(attempt);
+                log.warn("Writing {} chat messages failed (attempt {}), retrying in {} ms: {}",
+                        batch.size(), attempt, backoff, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * Writes the batch on the caller's thread, trying up to {@code attempts} times, and throws if
+     * it could not be written.
+     */
+    private void flushOrThrow(List<PendingMessage> batch, int attempts) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= attempts) {
+                    failed.increment(batch.size());
+                    throw new RuntimeException("Could not store chat message: " + e.getMessage(), e);
+                }
+                long backoff = backoffMillis(attempt);
+                log.warn("Writing {} chat messages failed (attempt {}), retrying in {} ms: {}",
+                        batch.size(), attempt, backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while storing chat message", ie);
+                }
+            }
+        }
+    }
+
+    // Doubles per attempt, capped at the backoff before the last configured attempt
+    private long backoffMillis(int attempt) {
+        return initialBackoffMillis << (Math.min(attempt, Math.max(1, maxAttempts - 1)) - 1);
+    }
+
+    private void write(List<PendingMessage> batch) {
+        List<ChatMessage> messages = batch.stream().map(PendingMessage::message).toList();
+        long start = System.nanoTime();
+        insert(messages);
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        written.increment(messages.size());
+
+        for (PendingMessage pending : batch) {
+            if (pending.onPersisted() == null) continue;
+            try {
+                pending.onPersisted().run();
+            } catch (RuntimeException e) {
+                log.warn("Post-persist callback for message {} failed: {}", pending.message().getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One unordered bulk insert. A retry may resend messages that already made it in; their
+     * duplicate-key errors are ignored since the ids were fixed before the first attempt.
+     */
+    private void insert(List<ChatMessage> messages) {
+        if (bucketed) {
+            appendToBuckets(messages);
+            return;
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatMessage.class)
+                    .insert(messages)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) throw e;
+            }
+        }
+    }
+
+    /**
+     * One upsert per bucket touched by the batch. {@code $addToSet} rather than {@code $push}
+     * keeps a retried append from adding the same message twice.
+     */
+    private void appendToBuckets(List<ChatMessage> messages) {
+        Map<String, List<ChatMessage>> byBucket = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            Instant bucketStart = ChatMessageBucket.bucketStartOf(message.getTimestamp(), bucketSize);
+            byBucket.computeIfAbsent(ChatMessageBucket.idOf(message.getConversationId(), bucketStart),
+                    id -> new ArrayList<>()).add(message);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatMessageBucket.class);
+        byBucket.forEach((bucketId, bucketMessages) -> {
+            ChatMessage first = bucketMessages.get(0);
+            Update append = new Update()
+                    .setOnInsert("conversationId", first.getConversationId())
+                    .setOnInsert("bucketStart", ChatMessageBucket.bucketStartOf(first.getTimestamp(), bucketSize));
+            append.addToSet("messages").each(bucketMessages.toArray());
+            bulk.upsert(new Query(Criteria.where("_id").is(bucketId)), append);
+        });
+        bulk.execute();
+    }
+}
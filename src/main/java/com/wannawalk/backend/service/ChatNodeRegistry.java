@@ -0,0 +1,212 @@
+package com.wannawalk.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster routing for WebSocket sessions. Every backend node has a random id and a Redis pub/sub
+ * channel ({@code chat_node:{nodeId}}); {@code ws_node:{userId}} records which node holds a user's
+ * session, and {@code ws_presence:{userId}} which chat that user is looking at, so presence checks
+ * see users on every node. Both expire unless the node refreshes them, so a node that dies without
+ * cleaning up stops receiving traffic after the registration TTL.
+ */
+@Component
+@Slf4j
+public class ChatNodeRegistry {
+
+    private static final String USER_NODE_KEY_PREFIX = "ws_node:";
+    private static final String USER_PRESENCE_KEY_PREFIX = "ws_presence:";
+    private static final String NODE_CHANNEL_PREFIX = "chat_node:";
+    private static final int SUBSCRIBE_RETRY_SECONDS = 10;
+    private static final RedisScript<Long> UNREGISTER_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/unregister_session.lua"), Long.class);
+    private static final RedisScript<Long> REFRESH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh_sessions.lua"), Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    // Users with a session on this node, re-registered on every heartbeat
+    private final Set<String> localUsers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Value("${app.chat.node.registration-ttl-seconds}")
+    private long registrationTtlSeconds;
+
+    private volatile RedisMessageListenerContainer listenerContainer;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String channelOfThisNode() {
+        return NODE_CHANNEL_PREFIX + nodeId;
+    }
+
+    /**
+     * Starts delivering this node's channel to the listener. The container is started on a
+     * background thread that retries until Redis is reachable, so startup never waits on Redis;
+     * local delivery works in the meantime.
+     */
+    public void subscribe(MessageListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(listener, new ChannelTopic(channelOfThisNode()));
+        container.afterPropertiesSet();
+        listenerContainer = container;
+
+        Thread starter = new Thread(() -> {
+            while (true) {
+                try {
+                    container.start();
+                    log.info("Listening for routed messages on {}", channelOfThisNode());
+                    return;
+                } catch (Exception e) {
+                    // A failed start leaves the container marked as running; reset it before retrying
+                    container.stop();
+                    log.warn("Could not subscribe to {}, retrying in {}s: {}",
+                            channelOfThisNode(), SUBSCRIBE_RETRY_SECONDS, e.getMessage());
+                    try {
+                        Thread.sleep(SUBSCRIBE_RETRY_SECONDS * 1000L);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }, "chat-node-subscriber");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * Registers a new session of the user on this node. It starts without chat presence, like a
+     * client that has not sent a presence update yet.
+     */
+    public void register(String userId) {
+        localUsers.add(userId);
+        Duration ttl = Duration.ofSeconds(registrationTtlSeconds);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForValue().set(USER_NODE_KEY_PREFIX + userId, nodeId, ttl);
+                    ops.delete(USER_PRESENCE_KEY_PREFIX + userId);
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.error("Could not register session of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    public void unregister(String userId) {
+        localUsers.remove(userId);
+        try {
+            redisTemplate.execute(UNREGISTER_SCRIPT,
+                    List.of(USER_NODE_KEY_PREFIX + userId, USER_PRESENCE_KEY_PREFIX + userId), nodeId);
+        } catch (DataAccessException e) {
+            log.error("Could not unregister session of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes the registrations and presence of all local users in one round trip, skipping
+     * users whose registration now points at another node.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.node.heartbeat-interval-ms}")
+    public void heartbeat() {
+        if (localUsers.isEmpty()) return;
+        List<String> userIds = new ArrayList<>(localUsers);
+        List<String> keys = new ArrayList<>(userIds.size() * 2);
+        for (String userId : userIds) {
+            keys.add(USER_NODE_KEY_PREFIX + userId);
+            keys.add(USER_PRESENCE_KEY_PREFIX + userId);
+        }
+        try {
+            redisTemplate.execute(REFRESH_SCRIPT, keys, nodeId, String.valueOf(registrationTtlSeconds * 1000));
+        } catch (DataAccessException e) {
+            log.error("Could not refresh {} session registrations: {}", userIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Records which chat the user is looking at, or clears it when {@code activeChatWith} is null.
+     */
+    public void updatePresence(String userId, String activeChatWith) {
+        String key = USER_PRESENCE_KEY_PREFIX + userId;
+        try {
+            if (activeChatWith == null) {
+                redisTemplate.delete(key);
+            } else {
+                redisTemplate.opsForValue().set(key, activeChatWith, Duration.ofSeconds(registrationTtlSeconds));
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not update presence of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * The user the given user is chatting with right now, on whichever node, or null. Also null
+     * if Redis cannot be reached, which at worst sends an extra push notification.
+     */
+    public String activeChatOf(String userId) {
+        try {
+            return redisTemplate.opsForValue().get(USER_PRESENCE_KEY_PREFIX + userId);
+        } catch (DataAccessException e) {
+            log.warn("Could not read presence of user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The node holding each given user's session, in one round trip. Users without a session
+     * anywhere are missing from the result.
+     */
+    public Map<String, String> nodesOf(List<String> userIds) {
+        Map<String, String> nodes = new HashMap<>();
+        if (userIds.isEmpty()) return nodes;
+        List<String> keys = userIds.stream().map(userId -> USER_NODE_KEY_PREFIX + userId).toList();
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) return nodes;
+        for (int i = 0; i < userIds.size(); i++) {
+            if (values.get(i) != null) {
+                nodes.put(userIds.get(i), values.get(i));
+            }
+        }
+        return nodes;
+    }
+
+    public void publish(String targetNodeId, String message) {
+        redisTemplate.convertAndSend(NODE_CHANNEL_PREFIX + targetNodeId, message);
+    }
+}
@@ -3,9 +3,12 @@
 package com.wannawalk.backend.service;
 
 import com.wannawalk.backend.config.ChatWebSocketHandler;
+import com.wannawalk.backend.errors.AlreadyFriendsException;
 import com.wannawalk.backend.errors.FriendServiceException;
+import com.wannawalk.backend.event.FriendshipChangedEvent;
 import com.wannawalk.backend.security.JwtTokenProvider; // --- NEW: Hypothetical token provider ---
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import com.wannawalk.backend.model.User;
 import com.wannawalk.backend.repository.UserRepository;
@@ -26,6 +29,9 @@ public class FriendService {
     @Autowired
     private ChatWebSocketHandler webSocketHandler;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * --- NEW: Adds a friend using a token from a QR code. ---
      * Validates the token, extracts the friend's ID, and calls addFriend.
@@ -52,7 +58,7 @@ public class FriendService {
         User friendUser = findUserById(friendId);
 
         if (currentUser.getFriends().contains(friendId)) {
-            throw new FriendServiceException("You are already friends.");
+            throw new AlreadyFriendsException("You are already friends.");
         }
 
         currentUser.getFriends().add(friendId);
@@ -60,6 +66,7 @@ public class FriendService {
 
         userRepository.save(currentUser);
         userRepository.save(friendUser);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(currentUserId, friendId, true));
     }
 
     public void removeFriend(String currentUserId, String friendId) {
@@ -75,6 +82,7 @@ public class FriendService {
 
         userRepository.save(currentUser);
         userRepository.save(friendUser);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(currentUserId, friendId, false));
 
         Map<String, Object> payloadForUnfriendedUser = Map.of(
                 "event", "friend_removed",
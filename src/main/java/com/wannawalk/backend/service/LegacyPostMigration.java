@@ -0,0 +1,169 @@
+package com.wannawalk.backend.service;
+
+import com.mongodb.DBRef;
+import com.wannawalk.backend.model.Comment;
+import com.wannawalk.backend.model.Post;
+import com.wannawalk.backend.model.PostLike;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves data out of the old embedded post fields in the background at startup. Every step only
+ * touches posts that still have the old field, so it is safe to run on every start and on
+ * several instances at once.
+ */
+@Component
+@Slf4j
+public class LegacyPostMigration {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.feed.migrate-legacy-posts-on-startup}")
+    private boolean migrateOnStartup;
+
+    @Value("${app.feed.latest-comments-per-post}")
+    private int latestCommentsPerPost;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!migrateOnStartup) return;
+        Thread migration = new Thread(() -> {
+            try {
+                int migrated = migrateAuthorIds(Post.class) + migrateAuthorIds(Comment.class);
+                if (migrated > 0) {
+                    log.info("Copied the author id onto {} posts and comments", migrated);
+                }
+            } catch (Exception e) {
+                log.error("Could not copy author ids onto posts and comments: {}", e.getMessage());
+            }
+            try {
+                int migrated = migrateLegacyLikes();
+                if (migrated > 0) {
+                    log.info("Migrated likes of {} posts into post_likes", migrated);
+                }
+            } catch (Exception e) {
+                log.error("Could not migrate legacy post likes: {}", e.getMessage());
+            }
+            try {
+                int migrated = migrateLegacyComments();
+                if (migrated > 0) {
+                    log.info("Migrated comments of {} posts to comments by postId", migrated);
+                }
+            } catch (Exception e) {
+                log.error("Could not migrate legacy post comments: {}", e.getMessage());
+            }
+        }, "legacy-post-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    /**
+     * Copies the id of the {@code author} reference into {@code authorId} on documents written
+     * before that field existed.
+     */
+    public int migrateAuthorIds(Class<?> document) {
+        Query legacy = new Query(Criteria.where("authorId").exists(false).and("author").exists(true));
+        legacy.fields().include("_id").include("author");
+        String collection = mongoTemplate.getCollectionName(document);
+
+        int migrated = 0;
+        try (Stream<Document> legacyDocuments = mongoTemplate.stream(legacy, Document.class, collection)) {
+            for (Document legacyDocument : (Iterable<Document>) legacyDocuments::iterator) {
+                if (legacyDocument.get("author") instanceof DBRef author) {
+                    mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(legacyDocument.get("_id"))),
+                            new Update().set("authorId", author.getId().toString()), collection);
+                    migrated++;
+                }
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Turns the old {@code likes} array of DBRefs into {@link PostLike} documents and a
+     * {@code likeCount}, then drops the array.
+     */
+    public int migrateLegacyLikes() {
+        Query legacy = new Query(Criteria.where("likes").exists(true));
+        legacy.fields().include("_id").include("likes");
+        String posts = mongoTemplate.getCollectionName(Post.class);
+
+        int migrated = 0;
+        try (Stream<Document> legacyPosts = mongoTemplate.stream(legacy, Document.class, posts)) {
+            for (Document post : (Iterable<Document>) legacyPosts::iterator) {
+                String postId = post.getObjectId("_id").toHexString();
+                for (Object like : post.getList("likes", Object.class, List.of())) {
+                    if (like instanceof DBRef ref) {
+                        String userId = ref.getId().toString();
+                        // Upsert so a like added since, or in an earlier partial run, is kept once
+                        mongoTemplate.upsert(
+                                new Query(Criteria.where("postId").is(postId).and("userId").is(userId)),
+                                new Update().setOnInsert("createdAt", Instant.now()),
+                                PostLike.class);
+                    }
+                }
+                long likeCount = mongoTemplate.count(new Query(Criteria.where("postId").is(postId)), PostLike.class);
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(post.getObjectId("_id"))),
+                        new Update().set("likeCount", likeCount).unset("likes"), posts);
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Turns the old {@code comments} array of DBRefs into a {@code postId} on each comment, a
+     * {@code commentCount} and the copied {@code latestComments}, then drops the array.
+     */
+    public int migrateLegacyComments() {
+        Query legacy = new Query(Criteria.where("comments").exists(true));
+        legacy.fields().include("_id").include("comments");
+        String posts = mongoTemplate.getCollectionName(Post.class);
+
+        int migrated = 0;
+        try (Stream<Document> legacyPosts = mongoTemplate.stream(legacy, Document.class, posts)) {
+            for (Document post : (Iterable<Document>) legacyPosts::iterator) {
+                String postId = post.getObjectId("_id").toHexString();
+                List<Object> commentIds = new ArrayList<>();
+                for (Object comment : post.getList("comments", Object.class, List.of())) {
+                    if (comment instanceof DBRef ref) {
+                        commentIds.add(ref.getId());
+                    }
+                }
+                if (!commentIds.isEmpty()) {
+                    mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(commentIds)),
+                            new Update().set("postId", postId), Comment.class);
+                }
+
+                long commentCount = mongoTemplate.count(new Query(Criteria.where("postId").is(postId)), Comment.class);
+                List<Comment> latest = new ArrayList<>(mongoTemplate.find(new Query(Criteria.where("postId").is(postId))
+                        .with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")))
+                        .limit(latestCommentsPerPost), Comment.class));
+                Collections.reverse(latest);
+
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(post.getObjectId("_id"))),
+                        new Update().set("commentCount", commentCount).set("latestComments", latest).unset("comments"),
+                        Post.class);
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+}
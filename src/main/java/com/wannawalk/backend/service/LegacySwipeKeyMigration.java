@@ -0,0 +1,127 @@
+package com.wannawalk.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Moves swipe sets from the old {@code swipes:<userId>:right|left} keys to the
+ * {@code swipes:{userId}:right|left} keys in the background at startup, and drops the old
+ * Bloom filters, as well as current-format filters built with other filter settings. Keys are
+ * handled as SCAN returns them, and the user's new filter is deleted after a copy so it gets
+ * rebuilt with the copied swipes. Safe to run on every start and on several instances at once.
+ * <p>
+ * Until a full pass has finished (on any instance, recorded in {@code swipes:legacy-migrated}),
+ * {@link #isComplete()} is false and swipe exclusion and match detection also read the old keys.
+ */
+@Component
+@Slf4j
+public class LegacySwipeKeyMigration {
+
+    private static final String MIGRATED_MARKER_KEY = "swipes:legacy-migrated";
+    // How often an instance that has not seen the marker yet looks for it
+    private static final long MARKER_CHECK_INTERVAL_MILLIS = 30_000;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.match.swipes.migrate-legacy-keys-on-startup}")
+    private boolean migrateOnStartup;
+
+    @Value("${app.match.swipe-filter.max-bits}")
+    private long swipeFilterMaxBits;
+
+    @Value("${app.match.swipe-filter.hashes}")
+    private int swipeFilterHashes;
+
+    private volatile boolean complete;
+    private volatile long markerCheckedAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!migrateOnStartup) return;
+        Thread migration = new Thread(() -> {
+            try {
+                int migrated = migrateLegacyKeys();
+                if (migrated > 0) {
+                    log.info("Moved {} swipe keys to the new key format", migrated);
+                }
+            } catch (Exception e) {
+                log.error("Could not migrate legacy swipe keys: {}", e.getMessage());
+            }
+        }, "swipe-key-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    /**
+     * Whether the old swipe keys are gone, so readers can skip them. Redis errors count as not
+     * complete, which only costs the extra reads.
+     */
+    public boolean isComplete() {
+        if (complete) return true;
+        long now = System.currentTimeMillis();
+        if (now - markerCheckedAt < MARKER_CHECK_INTERVAL_MILLIS) return false;
+        markerCheckedAt = now;
+        try {
+            complete = Boolean.TRUE.equals(redisTemplate.hasKey(MIGRATED_MARKER_KEY));
+        } catch (DataAccessException e) {
+            log.warn("Could not check swipe key migration marker: {}", e.getMessage());
+        }
+        return complete;
+    }
+
+    public int migrateLegacyKeys() {
+        int migrated = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(MatchService.SWIPES_KEY_PREFIX + "*").count(1000).build();
+        try (Cursor<String> keys = redisTemplate.scan(options)) {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.indexOf('{') >= 0) {
+                    dropIfStaleFilter(key);
+                } else if (!key.equals(MIGRATED_MARKER_KEY) && migrateKey(key)) {
+                    migrated++;
+                }
+            }
+        }
+        redisTemplate.opsForValue().set(MIGRATED_MARKER_KEY, "1");
+        complete = true;
+        return migrated;
+    }
+
+    private void dropIfStaleFilter(String key) {
+        // swipes:{<userId>}:bloom:<max bits>:<hashes>
+        int tagEnd = key.indexOf("}:bloom:");
+        if (tagEnd < 0) return;
+        String userId = key.substring(key.indexOf('{') + 1, tagEnd);
+        if (!key.equals(MatchService.swipeFilterKey(userId, swipeFilterMaxBits, swipeFilterHashes))) {
+            redisTemplate.delete(key);
+        }
+    }
+
+    private boolean migrateKey(String key) {
+        // swipes:<userId>:right, swipes:<userId>:left or swipes:<userId>:bloom:<bits>:<hashes>
+        String[] parts = key.split(":");
+        if (parts.length < 3) return false;
+        String userId = parts[1];
+        if (parts[2].equals("right") || parts[2].equals("left")) {
+            Set<String> members = redisTemplate.opsForSet().members(key);
+            if (members != null && !members.isEmpty()) {
+                redisTemplate.opsForSet().add(MatchService.swipeSetKey(userId, parts[2]), members.toArray(new String[0]));
+                // A filter built before the copy would miss these swipes
+                redisTemplate.delete(MatchService.swipeFilterKey(userId, swipeFilterMaxBits, swipeFilterHashes));
+            }
+        }
+        redisTemplate.delete(key);
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package com.wannawalk.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Point;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ingestion stage in front of the location store. Clients poll their position far more often than
+ * they move, so updates that moved less than {@code app.match.location.min-movement-meters} since
+ * the last write are dropped, and the rest are coalesced per user and written in one batched
+ * GEOADD every {@code app.match.location.flush-interval-ms}.
+ * Counters under {@code location.updates.*} and {@code location.writes} show how many writes this saves.
+ */
+@Service
+@Slf4j
+public class LocationIngestService {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final MatchService matchService;
+
+    // Latest not-yet-written position per user; newer updates overwrite older ones
+    private final Map<String, Point> pending = new ConcurrentHashMap<>();
+    // Last written position per user, used for the movement threshold
+    private final Map<String, WrittenLocation> lastWritten = new ConcurrentHashMap<>();
+
+    private final double minMovementMeters;
+    private final long maxSilenceMillis;
+
+    private final Counter received;
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Counter written;
+
+    private static class WrittenLocation {
+        private final Point point;
+        private final long writtenAt;
+
+        WrittenLocation(Point point, long writtenAt) {
+            this.point = point;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public LocationIngestService(MatchService matchService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.match.location.min-movement-meters}") double minMovementMeters,
+                                 @Value("${app.match.location.max-silence-seconds}") long maxSilenceSeconds) {
+        this.matchService = matchService;
+        this.minMovementMeters = minMovementMeters;
+        this.maxSilenceMillis = maxSilenceSeconds * 1000;
+        this.received = meterRegistry.counter("location.updates.received");
+        this.dropped = meterRegistry.counter("location.updates.dropped");
+        this.coalesced = meterRegistry.counter("location.updates.coalesced");
+        this.written = meterRegistry.counter("location.writes");
+        meterRegistry.gaugeMapSize("location.updates.pending", Tags.empty(), pending);
+    }
+
+    /**
+     * Accepts a client location update. Returns immediately; the write (if any) happens on the next flush.
+     */
+    public void submit(String userId, double longitude, double latitude) {
+        received.increment();
+        Point point = new Point(longitude, latitude);
+
+        WrittenLocation last = lastWritten.get(userId);
+        if (last != null
+                && System.currentTimeMillis() - last.writtenAt < maxSilenceMillis
+                && distanceMeters(last.point, point) < minMovementMeters) {
+            dropped.increment();
+            return;
+        }
+
+        if (pending.put(userId, point) != null) {
+            coalesced.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.match.location.flush-interval-ms}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        // Entries past the silence window no longer suppress anything
+        lastWritten.values().removeIf(location -> now - location.writtenAt >= maxSilenceMillis);
+
+        if (pending.isEmpty()) return;
+
+        Map<String, Point> batch = new HashMap<>();
+        for (String userId : pending.keySet()) {
+            Point point = pending.remove(userId);
+            if (point != null) batch.put(userId, point);
+        }
+        if (batch.isEmpty()) return;
+
+        try {
+            matchService.updateLocations(batch);
+            batch.forEach((userId, point) -> lastWritten.put(userId, new WrittenLocation(point, now)));
+            written.increment(batch.size());
+            log.debug("Flushed {} location updates ({} received, {} saved writes so far)",
+                    batch.size(), (long) received.count(), (long) (received.count() - written.count()));
+        } catch (Exception e) {
+            log.error("Could not flush {} location updates: {}", batch.size(), e.getMessage());
+            // Put them back unless a newer update arrived in the meantime
+            batch.forEach(pending::putIfAbsent);
+        }
+    }
+
+    private static double distanceMeters(Point a, Point b) {
+        double lat1 = Math.toRadians(a.getY());
+        double lat2 = Math.toRadians(b.getY());
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(b.getX() - a.getX());
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(h));
+    }
+}
@@ -0,0 +1,383 @@
+package com.wannawalk.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.geo.*;
+import org.springframework.data.redis.connection.RedisGeoCommands.GeoLocation;
+import org.springframework.data.redis.connection.RedisGeoCommands.GeoSearchCommandArgs;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.domain.geo.GeoShape;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Stores user locations partitioned by geohash cell ({@code user_locations:{geohash}}) instead of
+ * one global GEO key, so no single key holds every user and radius queries only touch the cells
+ * that overlap the search circle. Each user's current position and cell are kept under
+ * {@code user_location:{userId}} so moves can be removed from the old cell.
+ * <p>
+ * Migration: the old single {@code user_locations} key is drained into cells in the background at
+ * startup ({@code app.match.geo.migrate-legacy-on-startup}); until then it is also searched
+ * ({@code app.match.geo.read-legacy-key}, turn off once the key is gone).
+ */
+@Component
+@Slf4j
+public class LocationStore {
+
+    private static final String LEGACY_GEO_KEY = "user_locations";
+    private static final String CELL_KEY_PREFIX = "user_locations:";
+    private static final String USER_LOCATION_KEY_PREFIX = "user_location:";
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    // Guards against radius values that would fan out to a large part of the keyspace
+    private static final int MAX_COVERING_CELLS = 1024;
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    // Slack for skipping cells inside the inner radius: our corner distances are approximate
+    // and Redis uses a slightly larger earth radius
+    private static final double INNER_CELL_MARGIN = 1.01;
+    private static final char[] GEOHASH_BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    // Geohash length of a cell: 4 is roughly 39 x 20 km, 5 is roughly 5 x 5 km.
+    // Fixed per deployment: existing cells are not re-indexed when it changes.
+    @Value("${app.match.geo.cell-precision}")
+    private int cellPrecision;
+
+    @Value("${app.match.geo.read-legacy-key}")
+    private boolean readLegacyKey;
+
+    @Value("${app.match.geo.migrate-legacy-on-startup}")
+    private boolean migrateLegacyOnStartup;
+
+    /**
+     * A user found by {@link #searchNearest}, with the distance from the search origin.
+     */
+    public record NearbyUser(String userId, double distanceKm) {
+    }
+
+    /**
+     * Users within the radius, nearest first. {@code truncated} is true when a cell hit the
+     * search limit, i.e. a larger limit could return more users.
+     */
+    public record NearbySearch(List<NearbyUser> users, boolean truncated) {
+    }
+
+    /**
+     * Writes a batch of positions in pipelined round trips: one to swap each user's stored
+     * position (returning the previous cell), one for the GEOADDs per cell plus removal from the
+     * cells users moved out of, and one to re-read the stored positions.
+     * <p>
+     * A script cannot do the move, as the old cell's key is only known from the stored value and
+     * script keys must be declared up front. Instead the stored position decides: a concurrent save (e.g. on another node) that swapped it after
+     * us removes the user from our cell, and if our GEOADD landed after that removal the re-read
+     * sees the newer cell and we remove the user from ours. Either way the user ends up only in
+     * the cell of the last stored position.
+     */
+    public void saveAll(Map<String, Point> locations) {
+        if (locations.isEmpty()) return;
+        List<String> userIds = new ArrayList<>(locations.keySet());
+        Map<String, String> newCells = new HashMap<>();
+        for (String userId : userIds) {
+            Point point = locations.get(userId);
+            newCells.put(userId, cellOf(point.getX(), point.getY()));
+        }
+
+        List<Object> previous = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String userId : userIds) {
+                    Point point = locations.get(userId);
+                    ops.opsForValue().getAndSet(USER_LOCATION_KEY_PREFIX + userId,
+                            encode(newCells.get(userId), point));
+                }
+                return null;
+            }
+        });
+
+        Map<String, Map<String, Point>> byCell = new HashMap<>();
+        Map<String, List<String>> movedOutOf = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            String userId = userIds.get(i);
+            String cell = newCells.get(userId);
+            byCell.computeIfAbsent(cell, c -> new HashMap<>()).put(userId, locations.get(userId));
+            String previousCell = cellOfStored((String) previous.get(i));
+            if (previousCell != null && !previousCell.equals(cell)) {
+                movedOutOf.computeIfAbsent(previousCell, c -> new ArrayList<>()).add(userId);
+            }
+        }
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                byCell.forEach((cell, members) -> ops.opsForGeo().add(CELL_KEY_PREFIX + cell, members));
+                movedOutOf.forEach((cell, members) -> ops.opsForZSet().remove(CELL_KEY_PREFIX + cell, members.toArray()));
+                if (readLegacyKey) {
+                    ops.opsForZSet().remove(LEGACY_GEO_KEY, userIds.toArray());
+                }
+                return null;
+            }
+        });
+
+        List<String> stored = redisTemplate.opsForValue().multiGet(
+                userIds.stream().map(userId -> USER_LOCATION_KEY_PREFIX + userId).toList());
+        Map<String, List<String>> overtaken = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            String userId = userIds.get(i);
+            String cell = newCells.get(userId);
+            String storedCell = stored != null ? cellOfStored(stored.get(i)) : cell;
+            if (storedCell != null && !storedCell.equals(cell)) {
+                overtaken.computeIfAbsent(cell, c -> new ArrayList<>()).add(userId);
+            }
+        }
+        if (overtaken.isEmpty()) return;
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                overtaken.forEach((cell, members) -> ops.opsForZSet().remove(CELL_KEY_PREFIX + cell, members.toArray()));
+                return null;
+            }
+        });
+        log.debug("Cleaned up {} cells that a concurrent save had moved users out of", overtaken.size());
+    }
+
+    /**
+     * Returns the stored position of a user, or null if there is none.
+     */
+    public Point find(String userId) {
+        Point point = pointOfStored(redisTemplate.opsForValue().get(USER_LOCATION_KEY_PREFIX + userId));
+        if (point == null && readLegacyKey) {
+            List<Point> legacy = redisTemplate.opsForGeo().position(LEGACY_GEO_KEY, userId);
+            if (legacy != null && !legacy.isEmpty()) {
+                point = legacy.get(0);
+            }
+        }
+        return point;
+    }
+
+    /**
+     * Finds users within {@code radiusKm} of {@code origin}, nearest first (distance ties broken by
+     * user id). Only the cells overlapping the search circle are queried, in one pipelined round trip,
+     * each with {@code GEOSEARCH ... ASC COUNT limit}. A {@code limit} of 0 returns everyone in range.
+     * Cells that lie entirely within {@code minRadiusKm} are skipped, so a caller paging outwards
+     * only searches the ring it has not seen yet; users closer than that may still be returned
+     * from the cells that straddle it.
+     */
+    public NearbySearch searchNearest(Point origin, double minRadiusKm, double radiusKm, int limit) {
+        List<byte[]> keys = new ArrayList<>();
+        for (String cell : coveringCells(origin, minRadiusKm, radiusKm)) {
+            keys.add((CELL_KEY_PREFIX + cell).getBytes(StandardCharsets.UTF_8));
+        }
+        if (readLegacyKey) {
+            keys.add(LEGACY_GEO_KEY.getBytes(StandardCharsets.UTF_8));
+        }
+
+        GeoSearchCommandArgs args = GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending();
+        if (limit > 0) {
+            args = args.limit(limit);
+        }
+        GeoSearchCommandArgs searchArgs = args;
+        GeoShape shape = GeoShape.byRadius(new Distance(radiusKm, Metrics.KILOMETERS));
+
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] key : keys) {
+                connection.geoCommands().geoSearch(key, GeoReference.fromCoordinate(origin), shape, searchArgs);
+            }
+            return null;
+        });
+
+        Map<String, Double> distances = new HashMap<>();
+        boolean truncated = false;
+        for (Object reply : replies) {
+            @SuppressWarnings("unchecked")
+            GeoResults<GeoLocation<byte[]>> results = (GeoResults<GeoLocation<byte[]>>) reply;
+            if (results == null) continue;
+            if (limit > 0 && results.getContent().size() >= limit) {
+                truncated = true;
+            }
+            for (GeoResult<GeoLocation<byte[]>> result : results) {
+                String userId = new String(result.getContent().getName(), StandardCharsets.UTF_8);
+                distances.merge(userId, result.getDistance().getValue(), Math::min);
+            }
+        }
+
+        List<NearbyUser> users = new ArrayList<>(distances.size());
+        distances.forEach((userId, distance) -> users.add(new NearbyUser(userId, distance)));
+        users.sort(Comparator.comparingDouble(NearbyUser::distanceKm).thenComparing(NearbyUser::userId));
+        if (limit > 0 && users.size() > limit) {
+            return new NearbySearch(new ArrayList<>(users.subList(0, limit)), true);
+        }
+        return new NearbySearch(users, truncated);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyKeyInBackground() {
+        if (!migrateLegacyOnStartup) return;
+        Thread migration = new Thread(() -> {
+            try {
+                int migrated = migrateLegacyKey();
+                if (migrated > 0) {
+                    log.info("Migrated {} users from {} into geo cells", migrated, LEGACY_GEO_KEY);
+                }
+            } catch (Exception e) {
+                log.error("Could not migrate {} into geo cells: {}", LEGACY_GEO_KEY, e.getMessage());
+            }
+        }, "geo-cell-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    /**
+     * Drains the old single GEO key into cells, batch by batch. Users that already have a cell
+     * position (they moved since) only get removed from the old key. Safe to run repeatedly.
+     */
+    public int migrateLegacyKey() {
+        int migrated = 0;
+        while (true) {
+            Set<String> batch = redisTemplate.opsForZSet().range(LEGACY_GEO_KEY, 0, MIGRATION_BATCH_SIZE - 1);
+            if (batch == null || batch.isEmpty()) {
+                return migrated;
+            }
+            List<String> members = new ArrayList<>(batch);
+            List<Point> points = redisTemplate.opsForGeo().position(LEGACY_GEO_KEY, members.toArray(new String[0]));
+            List<String> locationKeys = members.stream().map(id -> USER_LOCATION_KEY_PREFIX + id).toList();
+            List<String> current = redisTemplate.opsForValue().multiGet(locationKeys);
+
+            Map<String, Point> toMigrate = new HashMap<>();
+            for (int i = 0; i < members.size(); i++) {
+                boolean alreadyInCell = current != null && current.get(i) != null;
+                Point point = points != null ? points.get(i) : null;
+                if (!alreadyInCell && point != null) {
+                    toMigrate.put(members.get(i), point);
+                }
+            }
+            saveAll(toMigrate);
+            // saveAll only clears the old key while it is still being read
+            redisTemplate.opsForZSet().remove(LEGACY_GEO_KEY, members.toArray());
+            migrated += toMigrate.size();
+        }
+    }
+
+    /**
+     * Geohash cells at the configured precision that cover the bounding box of the search circle,
+     * minus those whose farthest corner is closer than {@code minRadiusKm}.
+     */
+    Collection<String> coveringCells(Point origin, double minRadiusKm, double radiusKm) {
+        double latDelta = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double minLat = Math.max(-90, origin.getY() - latDelta);
+        double maxLat = Math.min(90, origin.getY() + latDelta);
+
+        double widestLat = Math.max(Math.abs(minLat), Math.abs(maxLat));
+        double lonDelta = widestLat >= 89.9
+                ? 180
+                : Math.toDegrees(radiusKm / (EARTH_RADIUS_KM * Math.cos(Math.toRadians(widestLat))));
+        double minLon = lonDelta >= 180 ? -180 : origin.getX() - lonDelta;
+        double maxLon = lonDelta >= 180 ? 180 : origin.getX() + lonDelta;
+
+        int bits = 5 * cellPrecision;
+        double cellWidth = 360.0 / (1L << ((bits + 1) / 2));
+        double cellHeight = 180.0 / (1L << (bits / 2));
+
+        double startLat = -90 + Math.floor((minLat + 90) / cellHeight) * cellHeight;
+        double startLon = -180 + Math.floor((minLon + 180) / cellWidth) * cellWidth;
+        double rows = Math.floor((maxLat - startLat) / cellHeight) + 1;
+        double columns = Math.floor((maxLon - startLon) / cellWidth) + 1;
+        if (rows * columns > MAX_COVERING_CELLS) {
+            throw new IllegalArgumentException("Search radius of " + radiusKm + " km is too large");
+        }
+
+        Set<String> cells = new LinkedHashSet<>();
+        for (double lat = startLat; lat <= maxLat; lat += cellHeight) {
+            for (double lon = startLon; lon <= maxLon; lon += cellWidth) {
+                if (minRadiusKm > 0
+                        && farthestCornerKm(origin, lat, lon, cellHeight, cellWidth) * INNER_CELL_MARGIN < minRadiusKm) {
+                    continue;
+                }
+                cells.add(cellOf(lon + cellWidth / 2, Math.min(90, lat + cellHeight / 2)));
+            }
+        }
+        return cells;
+    }
+
+    private static double farthestCornerKm(Point origin, double lat, double lon, double cellHeight, double cellWidth) {
+        double top = Math.min(90, lat + cellHeight);
+        return Math.max(
+                Math.max(distanceKm(origin, lat, lon), distanceKm(origin, lat, lon + cellWidth)),
+                Math.max(distanceKm(origin, top, lon), distanceKm(origin, top, lon + cellWidth)));
+    }
+
+    private static double distanceKm(Point origin, double latitude, double longitude) {
+        double lat1 = Math.toRadians(origin.getY());
+        double lat2 = Math.toRadians(latitude);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(longitude - origin.getX());
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    String cellOf(double longitude, double latitude) {
+        // Wrap longitudes past the antimeridian back into [-180, 180)
+        double lon = ((longitude + 180) % 360 + 360) % 360 - 180;
+        double[] lonRange = {-180, 180};
+        double[] latRange = {-90, 90};
+        StringBuilder geohash = new StringBuilder(cellPrecision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        while (geohash.length() < cellPrecision) {
+            double[] range = evenBit ? lonRange : latRange;
+            double value = evenBit ? lon : latitude;
+            double mid = (range[0] + range[1]) / 2;
+            if (value >= mid) {
+                ch |= 1 << (4 - bit);
+                range[0] = mid;
+            } else {
+                range[1] = mid;
+            }
+            evenBit = !evenBit;
+            if (bit < 4) {
+                bit++;
+            } else {
+                geohash.append(GEOHASH_BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return geohash.toString();
+    }
+
+    // Stored position format: "<cell>,<longitude>,<latitude>"
+    private static String encode(String cell, Point point) {
+        return cell + "," + point.getX() + "," + point.getY();
+    }
+
+    private static String cellOfStored(String stored) {
+        if (stored == null) return null;
+        int comma = stored.indexOf(',');
+        return comma < 0 ? null : stored.substring(0, comma);
+    }
+
+    private static Point pointOfStored(String stored) {
+        if (stored == null) return null;
+        String[] parts = stored.split(",");
+        if (parts.length != 3) return null;
+        return new Point(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+    }
+}
@@ -0,0 +1,367 @@
+package com.wannawalk.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wannawalk.backend.dto.CursorPage;
+import com.wannawalk.backend.dto.UserDto;
+import com.wannawalk.backend.event.MatchDeckRefreshEvent;
+import com.wannawalk.backend.model.User;
+import com.wannawalk.backend.model.User.MatchFilters;
+import com.wannawalk.backend.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pre-computes a ranked (nearest first) deck of match cards per user in Redis, so serving cards
+ * is a list pop instead of a geo search, swipe exclusion and profile lookup per request.
+ * Decks are rebuilt in the background when the user moves or changes their saved filters, and
+ * topped up from where the last card left off when they run low; a missing or expired deck
+ * falls back to live computation. A user without any candidates gets an empty-deck marker, so
+ * they are not recomputed on every request until it expires.
+ * <p>
+ * Keys per user start with {@code match_deck:{userId}}: the card list, the match cursor after its
+ * last card ({@code :cursor}, empty once the radius is exhausted) and the build key.
+ */
+@Service
+@Slf4j
+public class MatchDeckService {
+
+    private static final String DECK_KEY_PREFIX = "match_deck:";
+    // Stored instead of a cursor when no candidates are left
+    private static final String EXHAUSTED = "";
+    private static final double DEFAULT_RADIUS_KM = 20;
+    // Upper bound on candidate pages scanned per rebuild, in case filters reject almost everyone
+    private static final int MAX_PAGES_PER_BUILD = 10;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Set<String> buildsInFlight = ConcurrentHashMap.newKeySet();
+    // Rebuilds requested while another build of the same user was running; run when it finishes
+    private final Set<String> pendingRebuilds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService builderExecutor;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private MatchService matchService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${app.match.deck.size}")
+    private int deckSize;
+
+    @Value("${app.match.deck.max-age-seconds}")
+    private long maxAgeSeconds;
+
+    @Value("${app.match.deck.refill-threshold}")
+    private int refillThreshold;
+
+    @Value("${app.match.deck.min-rebuild-interval-seconds}")
+    private long minRebuildIntervalSeconds;
+
+    public MatchDeckService(@Value("${app.match.deck.builder-threads}") int builderThreads) {
+        this.builderExecutor = Executors.newFixedThreadPool(builderThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builderExecutor.shutdownNow();
+    }
+
+    /**
+     * Takes up to {@code count} cards from the user's deck. Falls back to a live, bounded match
+     * query with the saved filters when there is no fresh deck, schedules a rebuild when the deck
+     * is missing and a refill when it is running low.
+     */
+    public List<UserDto> takeFromDeck(String userId, int count) {
+        String deckKey = deckKey(userId);
+        List<String> entries = redisTemplate.opsForList().leftPop(deckKey, count);
+
+        if (entries == null || entries.isEmpty()) {
+            String cursor = redisTemplate.opsForValue().get(cursorKey(userId));
+            if (EXHAUSTED.equals(cursor)) {
+                // No candidates left; the marker expires with the deck or on a move or filter change
+                return new ArrayList<>();
+            }
+            log.debug("No fresh match deck for user {}, computing live", userId);
+            if (cursor == null) {
+                requestRebuild(userId, true);
+                return computeLive(userId, count, null).getItems();
+            }
+            // Drained deck: the live cards are handed out, so the refill continues after them
+            CursorPage<UserDto> live = computeLive(userId, count, cursor);
+            advanceCursor(userId, cursor, live.getNextCursor() != null ? live.getNextCursor() : EXHAUSTED);
+            requestRefill(userId);
+            return live.getItems();
+        }
+
+        Long remaining = redisTemplate.opsForList().size(deckKey);
+        if (remaining == null || remaining < refillThreshold) {
+            requestRefill(userId);
+        }
+
+        List<UserDto> cards = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            try {
+                cards.add(mapper.readValue(entry, UserDto.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Skipping corrupt match deck entry for user {}", userId);
+            }
+        }
+        // The deck may predate swipes made through the live endpoints
+        Set<String> swiped = matchService.findSwiped(userId, cards.stream().map(UserDto::getId).toList());
+        cards.removeIf(card -> swiped.contains(card.getId()));
+        return cards;
+    }
+
+    @EventListener
+    public void onRefreshRequested(MatchDeckRefreshEvent event) {
+        requestRebuilds(event.getUserIds(), event.isForce());
+    }
+
+    public void requestRebuild(String userId, boolean force) {
+        requestRebuilds(List.of(userId), force);
+    }
+
+    /**
+     * Schedules background rebuilds from the nearest candidate. Non-forced requests are throttled
+     * per user, with the throttle keys of the whole batch claimed in one pipeline. A user never has
+     * more than one build in flight on this node; a rebuild requested meanwhile runs after it.
+     */
+    public void requestRebuilds(Collection<String> userIds, boolean force) {
+        try {
+            List<String> due = force ? new ArrayList<>(userIds) : claimRebuildThrottles(userIds);
+            due.forEach(this::scheduleRebuild);
+        } catch (Exception e) {
+            log.error("Could not schedule match deck rebuilds for {} users: {}", userIds.size(), e.getMessage());
+        }
+    }
+
+    private List<String> claimRebuildThrottles(Collection<String> userIds) {
+        List<String> ids = new ArrayList<>(userIds);
+        Duration interval = Duration.ofSeconds(minRebuildIntervalSeconds);
+        List<Object> acquired = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String userId : ids) {
+                    ops.opsForValue().setIfAbsent(deckKey(userId) + ":throttle", "1", interval);
+                }
+                return null;
+            }
+        });
+        List<String> due = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (Boolean.TRUE.equals(acquired.get(i))) due.add(ids.get(i));
+        }
+        return due;
+    }
+
+    private void scheduleRebuild(String userId) {
+        // Marked before scheduling: if a build is in flight, it picks the mark up when it finishes
+        pendingRebuilds.add(userId);
+        schedule(userId, "rebuild", () -> {
+            pendingRebuilds.remove(userId);
+            rebuild(userId);
+        });
+    }
+
+    /**
+     * Schedules a background top-up of the deck, continuing after its last card.
+     */
+    private void requestRefill(String userId) {
+        schedule(userId, "refill", () -> refill(userId));
+    }
+
+    private interface DeckBuild {
+        void run() throws JsonProcessingException;
+    }
+
+    private void schedule(String userId, String kind, DeckBuild build) {
+        if (!buildsInFlight.add(userId)) return;
+        try {
+            builderExecutor.submit(() -> {
+                try {
+                    build.run();
+                } catch (Exception e) {
+                    log.error("Could not {} match deck for user {}: {}", kind, userId, e.getMessage());
+                } finally {
+                    buildsInFlight.remove(userId);
+                    if (pendingRebuilds.contains(userId)) {
+                        try {
+                            scheduleRebuild(userId);
+                        } catch (RuntimeException e) {
+                            log.warn("Could not schedule pending match deck rebuild for user {}: {}", userId, e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            buildsInFlight.remove(userId);
+            throw e;
+        }
+    }
+
+    /**
+     * Cards for a deck and the match cursor after the last of them ({@link #EXHAUSTED} if none follow).
+     */
+    private record DeckCards(List<String> entries, String nextCursor) {
+    }
+
+    private DeckCards collectCards(String userId, String startCursor, int max) throws JsonProcessingException {
+        MatchFilters filters = savedFilters(userId);
+        double radius = filters.getRadius() != null ? filters.getRadius() : DEFAULT_RADIUS_KM;
+
+        List<String> entries = new ArrayList<>(max);
+        String cursor = startCursor;
+        for (int page = 0; page < MAX_PAGES_PER_BUILD && entries.size() < max; page++) {
+            CursorPage<UserDto> candidates = matchService.getMatchPage(userId, radius, filters.getMinAge(),
+                    filters.getMaxAge(), filters.getBreeds(), filters.getPersonality(), max - entries.size(), cursor);
+            for (UserDto card : candidates.getItems()) {
+                entries.add(mapper.writeValueAsString(card));
+            }
+            cursor = candidates.getNextCursor();
+            if (cursor == null) break;
+        }
+        return new DeckCards(entries, cursor != null ? cursor : EXHAUSTED);
+    }
+
+    private void rebuild(String userId) throws JsonProcessingException {
+        DeckCards cards = collectCards(userId, null, deckSize);
+
+        // Build under a temporary key and swap it in atomically, so readers never see a half-written deck
+        String deckKey = deckKey(userId);
+        String nextKey = deckKey + ":next";
+        Duration maxAge = Duration.ofSeconds(maxAgeSeconds);
+        redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.multi();
+                if (cards.entries().isEmpty()) {
+                    ops.delete(deckKey);
+                } else {
+                    ops.delete(nextKey);
+                    ops.opsForList().rightPushAll(nextKey, cards.entries());
+                    ops.expire(nextKey, maxAge);
+                    ops.rename(nextKey, deckKey);
+                }
+                // Doubles as the empty-deck marker when there are no entries
+                ops.opsForValue().set(cursorKey(userId), cards.nextCursor(), maxAge);
+                return ops.exec();
+            }
+        });
+        log.debug("Rebuilt match deck for user {} with {} cards", userId, cards.entries().size());
+    }
+
+    /**
+     * Appends the candidates after the deck's last card. Cards already handed out stay handed out;
+     * if the deck was rebuilt in the meantime the stale cards are discarded.
+     */
+    private void refill(String userId) throws JsonProcessingException {
+        String deckKey = deckKey(userId);
+        String cursorKey = cursorKey(userId);
+        String startCursor = redisTemplate.opsForValue().get(cursorKey);
+        if (startCursor == null) {
+            rebuild(userId);
+            return;
+        }
+        if (EXHAUSTED.equals(startCursor)) return;
+
+        Long remaining = redisTemplate.opsForList().size(deckKey);
+        int missing = deckSize - (remaining != null ? remaining.intValue() : 0);
+        if (missing <= 0) return;
+        DeckCards cards = collectCards(userId, startCursor, missing);
+
+        Duration maxAge = Duration.ofSeconds(maxAgeSeconds);
+        List<Object> result = redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.watch(cursorKey);
+                if (!startCursor.equals(ops.opsForValue().get(cursorKey))) {
+                    ops.unwatch();
+                    return null;
+                }
+                ops.multi();
+                if (!cards.entries().isEmpty()) {
+                    ops.opsForList().rightPushAll(deckKey, cards.entries());
+                    ops.expire(deckKey, maxAge);
+                }
+                ops.opsForValue().set(cursorKey, cards.nextCursor(), maxAge);
+                return ops.exec();
+            }
+        });
+        if (result == null || result.isEmpty()) {
+            log.debug("Discarded match deck refill for user {}, the deck changed meanwhile", userId);
+            return;
+        }
+        log.debug("Refilled match deck for user {} with {} cards", userId, cards.entries().size());
+    }
+
+    private CursorPage<UserDto> computeLive(String userId, int count, String cursor) {
+        MatchFilters filters = savedFilters(userId);
+        double radius = filters.getRadius() != null ? filters.getRadius() : DEFAULT_RADIUS_KM;
+        return matchService.getMatchPage(userId, radius, filters.getMinAge(), filters.getMaxAge(),
+                filters.getBreeds(), filters.getPersonality(), count, cursor);
+    }
+
+    /**
+     * Moves the deck's cursor past cards served live, unless a rebuild or refill replaced it first.
+     */
+    private void advanceCursor(String userId, String expectedCursor, String nextCursor) {
+        String cursorKey = cursorKey(userId);
+        Duration maxAge = Duration.ofSeconds(maxAgeSeconds);
+        try {
+            redisTemplate.execute(new SessionCallback<List<Object>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.watch(cursorKey);
+                    if (!expectedCursor.equals(ops.opsForValue().get(cursorKey))) {
+                        ops.unwatch();
+                        return null;
+                    }
+                    ops.multi();
+                    ops.opsForValue().set(cursorKey, nextCursor, maxAge);
+                    return ops.exec();
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not advance match deck cursor for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private String deckKey(String userId) {
+        return DECK_KEY_PREFIX + "{" + userId + "}";
+    }
+
+    private String cursorKey(String userId) {
+        return deckKey(userId) + ":cursor";
+    }
+
+    private MatchFilters savedFilters(String userId) {
+        return userRepository.findById(userId)
+                .map(User::getMatchFilters)
+                .orElseGet(MatchFilters::new);
+    }
+}
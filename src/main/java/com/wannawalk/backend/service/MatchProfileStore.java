@@ -0,0 +1,175 @@
+package com.wannawalk.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wannawalk.backend.model.MatchProfile;
+import com.wannawalk.backend.model.User;
+import com.wannawalk.backend.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Keeps a {@link MatchProfile} hash per user in Redis ({@code match_profile:{userId}}).
+ * Writers call {@link #save(User)} whenever a matchable field changes; readers go through
+ * {@link #findAll(Collection)}, which falls back to MongoDB only for users whose projection
+ * is missing (e.g. accounts created before the projection existed) and backfills them.
+ */
+@Component
+@Slf4j
+public class MatchProfileStore {
+
+    private static final String MATCH_PROFILE_KEY_PREFIX = "match_profile:";
+    // Bounds how long a projection can stay stale if a write to Redis ever gets lost
+    private static final Duration MATCH_PROFILE_TTL = Duration.ofDays(7);
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {};
+
+    private static final String FIELD_DOG_NAME = "dogName";
+    private static final String FIELD_BIRTHDAY = "birthday";
+    private static final String FIELD_BREED = "breed";
+    private static final String FIELD_PROFILE_PIC_URL = "profilePicUrl";
+    private static final String FIELD_PERSONALITY = "personality";
+    private static final String FIELD_PERSONALITY_MASK = "personalityMask";
+    private static final String FIELD_MATCH_PREFERENCES = "matchPreferences";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PersonalityTraitRegistry traitRegistry;
+
+    /**
+     * Writes (or overwrites) the projection of the given user. Failures are logged and swallowed:
+     * the projection is a cache and must never break the profile write that triggered it.
+     */
+    public void save(User user) {
+        if (user == null || user.getId() == null) return;
+        try {
+            String key = MATCH_PROFILE_KEY_PREFIX + user.getId();
+            Map<String, String> fields = toHash(project(user));
+            // Replace the whole hash so fields that became null don't linger
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.delete(key);
+                    ops.opsForHash().putAll(key, fields);
+                    ops.expire(key, MATCH_PROFILE_TTL);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("Could not update match profile for user {}: {}", user.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the projections for the given user IDs with one pipelined round trip to Redis.
+     * IDs without a projection are loaded from MongoDB in a single query and written back.
+     * Order follows the input; IDs that exist nowhere are skipped.
+     */
+    public List<MatchProfile> findAll(Collection<String> userIds) {
+        if (userIds.isEmpty()) return Collections.emptyList();
+        List<String> ids = new ArrayList<>(userIds);
+
+        List<Object> hashes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String id : ids) {
+                    ops.opsForHash().entries(MATCH_PROFILE_KEY_PREFIX + id);
+                }
+                return null;
+            }
+        });
+
+        Map<String, MatchProfile> profiles = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> hash = (Map<String, String>) hashes.get(i);
+            if (hash == null || hash.isEmpty()) {
+                missing.add(ids.get(i));
+            } else {
+                profiles.put(ids.get(i), fromHash(ids.get(i), hash));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            log.debug("Backfilling {} match profiles from MongoDB", missing.size());
+            for (User user : userRepository.findAllById(missing)) {
+                profiles.put(user.getId(), project(user));
+                save(user);
+            }
+        }
+
+        List<MatchProfile> result = new ArrayList<>(profiles.size());
+        for (String id : ids) {
+            MatchProfile profile = profiles.get(id);
+            if (profile != null) result.add(profile);
+        }
+        return result;
+    }
+
+    // Recompute the mask from the list so users saved before masks existed get a correct one
+    private MatchProfile project(User user) {
+        MatchProfile profile = MatchProfile.from(user);
+        profile.setPersonalityMask(traitRegistry.maskOf(user.getPersonality()));
+        return profile;
+    }
+
+    private Map<String, String> toHash(MatchProfile profile) throws JsonProcessingException {
+        Map<String, String> hash = new HashMap<>();
+        putIfNotNull(hash, FIELD_DOG_NAME, profile.getDogName());
+        putIfNotNull(hash, FIELD_BIRTHDAY, profile.getBirthday() != null ? String.valueOf(profile.getBirthday().getTime()) : null);
+        putIfNotNull(hash, FIELD_BREED, profile.getBreed());
+        putIfNotNull(hash, FIELD_PROFILE_PIC_URL, profile.getProfilePicUrl());
+        putIfNotNull(hash, FIELD_PERSONALITY, profile.getPersonality() != null ? mapper.writeValueAsString(profile.getPersonality()) : null);
+        hash.put(FIELD_PERSONALITY_MASK, String.valueOf(profile.getPersonalityMask()));
+        putIfNotNull(hash, FIELD_MATCH_PREFERENCES, profile.getMatchPreferences());
+        return hash;
+    }
+
+    private MatchProfile fromHash(String userId, Map<String, String> hash) {
+        MatchProfile profile = new MatchProfile();
+        profile.setId(userId);
+        profile.setDogName(hash.get(FIELD_DOG_NAME));
+        String birthday = hash.get(FIELD_BIRTHDAY);
+        profile.setBirthday(birthday != null ? new Date(Long.parseLong(birthday)) : null);
+        profile.setBreed(hash.get(FIELD_BREED));
+        profile.setProfilePicUrl(hash.get(FIELD_PROFILE_PIC_URL));
+        String personality = hash.get(FIELD_PERSONALITY);
+        if (personality != null) {
+            try {
+                profile.setPersonality(mapper.readValue(personality, STRING_LIST));
+            } catch (JsonProcessingException e) {
+                log.warn("Corrupt personality in match profile of user {}", userId);
+            }
+        }
+        String personalityMask = hash.get(FIELD_PERSONALITY_MASK);
+        profile.setPersonalityMask(personalityMask != null
+                ? Long.parseLong(personalityMask)
+                : traitRegistry.maskOf(profile.getPersonality()));
+        profile.setMatchPreferences(hash.get(FIELD_MATCH_PREFERENCES));
+        return profile;
+    }
+
+    private static void putIfNotNull(Map<String, String> hash, String field, String value) {
+        if (value != null) hash.put(field, value);
+    }
+}
@@ -1,15 +1,20 @@
 package com.wannawalk.backend.service;
 
-import com.wannawalk.backend.model.User;
+import com.wannawalk.backend.model.MatchProfile;
+import com.wannawalk.backend.model.User.MatchFilters;
+import com.wannawalk.backend.dto.CursorPage;
 import com.wannawalk.backend.dto.UserDto;
-import com.wannawalk.backend.repository.UserRepository;
+import com.wannawalk.backend.event.MatchCreatedEvent;
+import com.wannawalk.backend.event.MatchDeckRefreshEvent;
+import com.wannawalk.backend.errors.InvalidCursorException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.geo.Circle;
-import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -22,21 +27,60 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MatchService {
 
-    private static final String USER_GEO_KEY = "user_locations";
-    private static final String SWIPES_KEY_PREFIX = "swipes:";
+    // Swipe keys of a user are "swipes:{<userId>}:..."; the old "swipes:<userId>:..." ones are
+    // still read until LegacySwipeKeyMigration has moved them
+    static final String SWIPES_KEY_PREFIX = "swipes:";
     private static final String MATCHES_KEY_PREFIX = "matches:";
+    // One key per matched pair, "match_pair:{<lower id>:<higher id>}"; creating it creates the match
+    private static final String MATCH_PAIR_KEY_PREFIX = "match_pair:";
+    // Match page cursors are "<distance>:<memberId>:<rank>" of the last candidate handed out, where
+    // rank is its position in the search that produced it (older cursors have no rank)
+    private static final char CURSOR_SEPARATOR = ':';
+
+    // Swipe exclusion (Bloom filter first, exact sets for positives), see scripts/exclude_swiped.lua
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> EXCLUDE_SWIPED_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/exclude_swiped.lua"), List.class);
+    // Builds a missing swipe filter from positions computed here, see scripts/build_swipe_filter.lua
+    private static final RedisScript<Long> BUILD_SWIPE_FILTER_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/build_swipe_filter.lua"), Long.class);
+    // Swipe recording and match creation in one step, see scripts/record_swipe.lua
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RECORD_SWIPE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/record_swipe.lua"), List.class);
+
+    // Per-user swipe Bloom filter. Each filter is sized from the user's swipe count (SwipeFilter),
+    // max-bits and hashes are part of the key, so changing them starts fresh filters that get
+    // rebuilt from the exact swipe sets on first use.
+    @Value("${app.match.swipe-filter.min-swipes}")
+    private long swipeFilterMinSwipes;
+
+    @Value("${app.match.swipe-filter.bits-per-swipe}")
+    private int swipeFilterBitsPerSwipe;
+
+    @Value("${app.match.swipe-filter.max-bits}")
+    private long swipeFilterMaxBits;
+
+    @Value("${app.match.swipe-filter.hashes}")
+    private int swipeFilterHashes;
 
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
     @Autowired
-    private UserRepository userRepository;
+    private LocationStore locationStore;
+
+    @Autowired
+    private MatchProfileStore matchProfileStore;
+
+    @Autowired
+    private PersonalityTraitRegistry traitRegistry;
 
     @Autowired
-    private FriendService friendService;
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    private NotificationService notificationService;
+    private LegacySwipeKeyMigration legacySwipeKeyMigration;
 
     private int calculateAge(Date birthDate) {
         if (birthDate == null) return 0;
@@ -44,125 +88,344 @@ public class MatchService {
         return Period.between(birthLocalDate, LocalDate.now()).getYears();
     }
 
-    private UserDto convertToUserDto(User user) {
-        if (user == null) return null;
+    private UserDto convertToUserDto(MatchProfile profile, Double distanceKm) {
+        if (profile == null) return null;
         return new UserDto(
-                user.getId(),
-                user.getDogName(),
-                calculateAge(user.getBirthday()),
-                user.getBreed(),
-                user.getProfilePicUrl(),
-                user.getPersonality(),
-                user.getMatchPreferences()
+                profile.getId(),
+                profile.getDogName(),
+                calculateAge(profile.getBirthday()),
+                profile.getBreed(),
+                profile.getProfilePicUrl(),
+                profile.getPersonality(),
+                profile.getMatchPreferences(),
+                distanceKm
         );
     }
 
-    public void updateLocation(String userId, double longitude, double latitude) {
-        redisTemplate.opsForGeo().add(USER_GEO_KEY, new Point(longitude, latitude), userId);
-        log.info("Updated location for {}: {}, {}", userId, longitude, latitude);
+    /**
+     * Writes a batch of user locations with batched GEOADDs per geo cell. Called by
+     * {@link LocationIngestService}, which has already dropped and coalesced redundant client updates.
+     */
+    public void updateLocations(Map<String, Point> locations) {
+        if (locations.isEmpty()) return;
+        locationStore.saveAll(locations);
+        log.debug("Updated locations for {} users", locations.size());
+        eventPublisher.publishEvent(new MatchDeckRefreshEvent(new ArrayList<>(locations.keySet()), false));
     }
 
     /**
      * --- EDITED ---
-     * Retrieves potential matches, first filtering by radius in Redis, then applying
+     * Retrieves potential matches, first filtering by radius and swipe history in Redis, then applying
      * other filters on the resulting user list.
      */
     public List<UserDto> getMatches(String userId, double radiusKm, Integer minAge, Integer maxAge, List<String> breeds, List<String> personality) {
-        // 1. Get user's location from Redis
-        List<Point> userPositionList = redisTemplate.opsForGeo().position(USER_GEO_KEY, userId);
-        if (userPositionList == null || userPositionList.isEmpty() || userPositionList.get(0) == null) {
-            log.warn("Could not find location for user {}", userId);
-            return Collections.emptyList();
-        }
-        Point userPosition = userPositionList.get(0);
-
-        // 2. Query Redis for users within the radius
-        Circle within = new Circle(userPosition, new Distance(radiusKm, Metrics.KILOMETERS));
-        var geoResults = redisTemplate.opsForGeo().radius(USER_GEO_KEY, within);
-        if (geoResults == null) return Collections.emptyList();
-
-        // 3. Get IDs of users the current user has already swiped on
-        Set<String> swipedRight = redisTemplate.opsForSet().members(SWIPES_KEY_PREFIX + userId + ":right");
-        Set<String> swipedLeft = redisTemplate.opsForSet().members(SWIPES_KEY_PREFIX + userId + ":left");
-        Set<String> alreadySwiped = new HashSet<>();
-        if (swipedRight != null) alreadySwiped.addAll(swipedRight);
-        if (swipedLeft != null) alreadySwiped.addAll(swipedLeft);
-
-        // 4. Filter out self and already swiped users
-        List<String> potentialMatchIds = geoResults.getContent().stream()
-                .map(result -> result.getContent().getName())
-                .filter(memberId -> !memberId.equals(userId) && !alreadySwiped.contains(memberId))
-                .collect(Collectors.toList());
+        // 1. Radius query over the overlapping geo cells, minus self and already swiped users
+        CandidateSlice slice = findUnswipedCandidates(userId, radiusKm, 0, null);
+
+        // 2. Load projections and apply the remaining filters
+        return applyFilters(slice.distances(), toFilters(minAge, maxAge, breeds, personality));
+    }
+
+    /**
+     * Bounded variant of {@link #getMatches}: returns at most {@code limit} candidates, nearest first,
+     * starting after {@code cursor}. Candidates dropped by the age/breed/personality filters still
+     * advance the cursor, so a page can hold fewer than {@code limit} items while more pages follow.
+     */
+    public CursorPage<UserDto> getMatchPage(String userId, double radiusKm, Integer minAge, Integer maxAge,
+                                            List<String> breeds, List<String> personality, int limit, String cursor) {
+        CandidateSlice slice = findUnswipedCandidates(userId, radiusKm, limit, cursor);
+        List<UserDto> items = applyFilters(slice.distances(), toFilters(minAge, maxAge, breeds, personality));
+        return new CursorPage<>(items, slice.nextCursor());
+    }
+
+    private MatchFilters toFilters(Integer minAge, Integer maxAge, List<String> breeds, List<String> personality) {
+        MatchFilters filters = new MatchFilters();
+        filters.setMinAge(minAge);
+        filters.setMaxAge(maxAge);
+        filters.setBreeds(breeds);
+        filters.setPersonality(personality);
+        return filters;
+    }
+
+    /**
+     * Loads the match projections of the given candidates (in iteration order) and keeps those
+     * that pass the age, breed and personality filters.
+     */
+    private List<UserDto> applyFilters(Map<String, Double> candidates, MatchFilters filters) {
+        if (candidates.isEmpty()) return Collections.emptyList();
 
-        if (potentialMatchIds.isEmpty()) return Collections.emptyList();
+        Integer minAge = filters.getMinAge();
+        Integer maxAge = filters.getMaxAge();
+        List<String> breeds = filters.getBreeds();
+        List<String> personality = filters.getPersonality();
 
-        // 5. Fetch full user objects from MongoDB
-        List<User> usersFromDb = userRepository.findAllById(potentialMatchIds);
+        // Compact match projections from Redis (MongoDB is only hit for missing ones)
+        List<MatchProfile> profiles = matchProfileStore.findAll(candidates.keySet());
 
-        // 6. Apply remaining filters in Java and map to DTOs
-        return usersFromDb.stream()
+        long wantedTraits = traitRegistry.maskOf(personality);
+        boolean wantedTraitsExact = traitRegistry.isFullyRegistered(personality);
+        return profiles.stream()
                 // Age Filter
-                .filter(user -> {
+                .filter(profile -> {
                     if (minAge == null || maxAge == null) return true;
-                    int age = calculateAge(user.getBirthday());
+                    int age = calculateAge(profile.getBirthday());
                     return age >= minAge && age <= maxAge;
                 })
                 // Breed Filter
-                .filter(user -> {
+                .filter(profile -> {
                     if (breeds == null || breeds.isEmpty()) return true;
-                    return breeds.contains(user.getBreed());
+                    return breeds.contains(profile.getBreed());
                 })
                 // Personality Filter
-                .filter(user -> {
+                .filter(profile -> {
                     if (personality == null || personality.isEmpty()) return true;
-                    if (user.getPersonality() == null) return false;
-                    // Check if there is any overlap between the lists
-                    return !Collections.disjoint(user.getPersonality(), personality);
+                    // Any shared trait is a single AND on the masks
+                    if ((profile.getPersonalityMask() & wantedTraits) != 0) return true;
+                    if (wantedTraitsExact || profile.getPersonality() == null) return false;
+                    // Traits outside the registry have no bit, compare those by name
+                    return !Collections.disjoint(profile.getPersonality(), personality);
                 })
-                .map(this::convertToUserDto)
+                .map(profile -> convertToUserDto(profile, candidates.get(profile.getId())))
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Candidate IDs mapped to their distance in km, nearest first, plus the cursor of the next page.
+     */
+    private record CandidateSlice(LinkedHashMap<String, Double> distances, String nextCursor) {
+    }
+
+    /**
+     * Position after which a match page resumes: pages are ordered by (distance, user id), and
+     * {@code rank} counts the search results up to and including this key.
+     */
+    record MatchCursor(double distance, String userId, int rank) {
+    }
+
+    /**
+     * Finds users within the radius, minus the user themself and everyone they already swiped on,
+     * nearest first. {@code limit} 0 returns the whole radius. The geo search skips the cells
+     * inside the cursor's distance and starts with a window of the cursor's rank plus a margin,
+     * doubling it until the page is full or the radius is exhausted, so a page never pulls more
+     * of the radius than it needs. Returns an empty slice when the user has no stored location.
+     */
+    private CandidateSlice findUnswipedCandidates(String userId, double radiusKm, int limit, String cursor) {
+        LinkedHashMap<String, Double> distances = new LinkedHashMap<>();
+        Point origin = locationStore.find(userId);
+        if (origin == null) {
+            log.warn("Could not find location for user {}", userId);
+            return new CandidateSlice(distances, null);
+        }
+
+        // Everything up to and including this key is done
+        MatchCursor after = parseCursor(cursor);
+
+        int window = limit > 0 ? Math.max(limit * 2, 50) + (after != null ? after.rank() : 0) : 0;
+        while (true) {
+            double minRadiusKm = after != null ? after.distance() : 0;
+            LocationStore.NearbySearch search = locationStore.searchNearest(origin, minRadiusKm, radiusKm, window);
+            List<LocationStore.NearbyUser> found = search.users();
+
+            // Indexes into found of the candidates past the cursor
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < found.size(); i++) {
+                LocationStore.NearbyUser nearby = found.get(i);
+                if (nearby.userId().equals(userId)) continue;
+                if (after != null && (nearby.distanceKm() < after.distance()
+                        || (nearby.distanceKm() == after.distance() && nearby.userId().compareTo(after.userId()) <= 0))) {
+                    continue;
+                }
+                pending.add(i);
+            }
+
+            List<Boolean> swiped = checkSwiped(userId, pending.stream().map(i -> found.get(i).userId()).toList());
+            for (int i = 0; i < pending.size(); i++) {
+                LocationStore.NearbyUser nearby = found.get(pending.get(i));
+                after = new MatchCursor(nearby.distanceKm(), nearby.userId(), pending.get(i) + 1);
+                if (swiped.get(i)) continue;
+                distances.put(nearby.userId(), nearby.distanceKm());
+                if (limit > 0 && distances.size() == limit) {
+                    // Page is full, the next one resumes right after this candidate
+                    return new CandidateSlice(distances, encodeCursor(after));
+                }
+            }
+
+            if (window == 0 || !search.truncated()) {
+                return new CandidateSlice(distances, null);
+            }
+            window *= 2;
+        }
+    }
+
+    static MatchCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        String[] parts = cursor.split(String.valueOf(CURSOR_SEPARATOR));
+        if (parts.length != 2 && parts.length != 3) {
+            throw new InvalidCursorException(cursor);
+        }
+        try {
+            int rank = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            return new MatchCursor(Double.parseDouble(parts[0]), parts[1], Math.max(0, rank));
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    static String encodeCursor(MatchCursor cursor) {
+        return cursor.distance() + String.valueOf(CURSOR_SEPARATOR) + cursor.userId()
+                + CURSOR_SEPARATOR + cursor.rank();
+    }
+
+    /**
+     * Runs the exclusion script; one flag per candidate, in order, true if already swiped.
+     * Builds the user's swipe filter afterwards if the script reports it missing for a user with
+     * enough swipes to need one.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Boolean> checkSwiped(String userId, List<String> candidateIds) {
+        if (candidateIds.isEmpty()) return Collections.emptyList();
+        List<Object> args = new ArrayList<>(candidateIds.size() * (swipeFilterHashes + 1) + 3);
+        args.add(String.valueOf(swipeFilterHashes));
+        args.add(String.valueOf(swipeFilterMinSwipes));
+        args.add(legacySwipeKeyMigration.isComplete() ? "0" : "1");
+        for (String candidateId : candidateIds) {
+            args.add(candidateId);
+            addFilterPositions(args, candidateId);
+        }
+        List<String> keys = new ArrayList<>(swipeKeys(userId));
+        keys.add(legacySwipeSetKey(userId, "right"));
+        keys.add(legacySwipeSetKey(userId, "left"));
+        List<Long> reply = redisTemplate.execute(EXCLUDE_SWIPED_SCRIPT, keys, args.toArray());
+
+        List<Boolean> swiped = new ArrayList<>(candidateIds.size());
+        for (int i = 0; i < candidateIds.size(); i++) {
+            swiped.add(reply != null && i + 1 < reply.size() && reply.get(i + 1) == 1L);
+        }
+        if (reply != null && !reply.isEmpty() && reply.get(0) == 1L) {
+            buildSwipeFilter(userId);
+        }
+        return swiped;
+    }
+
+    /**
+     * Creates the user's swipe filter from their swipe sets, sized for their swipe count. Skipped
+     * (and retried on a later check) if a swipe comes in while the sets are being read.
+     */
+    private void buildSwipeFilter(String userId) {
+        try {
+            List<String> keys = swipeKeys(userId);
+            Set<String> right = redisTemplate.opsForSet().members(keys.get(0));
+            Set<String> left = redisTemplate.opsForSet().members(keys.get(1));
+            int members = (right == null ? 0 : right.size()) + (left == null ? 0 : left.size());
+            long bits = SwipeFilter.sizeFor(members, swipeFilterBitsPerSwipe, swipeFilterMaxBits);
+            List<Object> args = new ArrayList<>(members * swipeFilterHashes + 2);
+            args.add(String.valueOf(members));
+            args.add(String.valueOf(bits));
+            for (Set<String> swipes : Arrays.asList(right, left)) {
+                if (swipes == null) continue;
+                for (String member : swipes) {
+                    for (long position : SwipeFilter.positions(member, bits, swipeFilterHashes)) {
+                        args.add(String.valueOf(position));
+                    }
+                }
+            }
+            Long built = redisTemplate.execute(BUILD_SWIPE_FILTER_SCRIPT, keys, args.toArray());
+            log.debug("Swipe filter for user {} {}", userId, Long.valueOf(1L).equals(built) ? "built" : "deferred");
+        } catch (RuntimeException e) {
+            log.warn("Could not build swipe filter for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static String matchPairKey(String userId, String otherUserId) {
+        String pair = userId.compareTo(otherUserId) < 0 ? userId + ":" + otherUserId : otherUserId + ":" + userId;
+        return MATCH_PAIR_KEY_PREFIX + "{" + pair + "}";
+    }
+
+    // Positions for the largest filter size; the scripts reduce them to the size of the stored filter
+    private void addFilterPositions(List<Object> args, String member) {
+        for (long position : SwipeFilter.positions(member, swipeFilterMaxBits, swipeFilterHashes)) {
+            args.add(String.valueOf(position));
+        }
+    }
+
+    private List<String> swipeKeys(String userId) {
+        return List.of(swipeSetKey(userId, "right"), swipeSetKey(userId, "left"),
+                swipeFilterKey(userId, swipeFilterMaxBits, swipeFilterHashes));
+    }
+
+    /**
+     * Returns which of the given candidates the user has already swiped on, in either direction.
+     */
+    public Set<String> findSwiped(String userId, List<String> candidateIds) {
+        List<Boolean> flags = checkSwiped(userId, candidateIds);
+        Set<String> swiped = new HashSet<>();
+        for (int i = 0; i < candidateIds.size(); i++) {
+            if (flags.get(i)) swiped.add(candidateIds.get(i));
+        }
+        return swiped;
+    }
+
+    static String swipeSetKey(String userId, String direction) {
+        return SWIPES_KEY_PREFIX + "{" + userId + "}:" + direction;
+    }
+
+    static String legacySwipeSetKey(String userId, String direction) {
+        return SWIPES_KEY_PREFIX + userId + ":" + direction;
+    }
+
+    static String swipeFilterKey(String userId, long maxFilterBits, int filterHashes) {
+        return SWIPES_KEY_PREFIX + "{" + userId + "}:bloom:" + maxFilterBits + ":" + filterHashes;
+    }
 
+    /**
+     * Records the swipe and, for a right swipe, settles the match in a single script call: the
+     * mutual check, the pair key (SET NX, so exactly one of two simultaneous swipes creates the
+     * match), both match sets and the outbox entries of its side effects (friendship,
+     * notification, WebSocket event). The {@link MatchCreatedEvent} then only starts them early;
+     * the outbox sweeper runs them even if this node goes away first.
+     */
+    @SuppressWarnings("unchecked")
     public Map<String, Object> handleSwipe(String userId, String swipedUserId, String direction) {
-        String swipeKey = SWIPES_KEY_PREFIX + userId + ":" + direction.toLowerCase();
-        redisTemplate.opsForSet().add(swipeKey, swipedUserId);
+        String swipeDirection = direction.toLowerCase();
+        List<String> keys = new ArrayList<>(swipeKeys(userId));
+        keys.add(swipeSetKey(swipedUserId, "right"));
+        keys.add(legacySwipeSetKey(swipedUserId, "right"));
+        keys.add(matchPairKey(userId, swipedUserId));
+        keys.add(MATCHES_KEY_PREFIX + userId);
+        keys.add(MATCHES_KEY_PREFIX + swipedUserId);
+        keys.add(MatchSideEffectService.PENDING_KEY);
+        List<String> sideEffects = MatchSideEffectService.outboxEntries(userId, swipedUserId);
+        List<Object> args = new ArrayList<>(List.of(swipeDirection, swipedUserId, userId,
+                String.valueOf(swipeFilterBitsPerSwipe), String.valueOf(swipeFilterMaxBits),
+                legacySwipeKeyMigration.isComplete() ? "0" : "1",
+                String.valueOf(System.currentTimeMillis()), String.valueOf(sideEffects.size())));
+        args.addAll(sideEffects);
+        addFilterPositions(args, swipedUserId);
+        List<Long> outcome = redisTemplate.execute(RECORD_SWIPE_SCRIPT, keys, args.toArray());
+
+        boolean isMatch = outcome != null && outcome.size() == 2 && outcome.get(0) == 1L;
+        boolean newMatch = isMatch && outcome.get(1) == 1L;
         log.info("{} swiped {} on {}", userId, direction, swipedUserId);
 
         Map<String, Object> response = new HashMap<>();
         response.put("isMatch", false);
+        if (!isMatch) {
+            return response;
+        }
 
-        if ("right".equalsIgnoreCase(direction)) {
-            String otherUserSwipesKey = SWIPES_KEY_PREFIX + swipedUserId + ":right";
-            Boolean hasMutualLike = redisTemplate.opsForSet().isMember(otherUserSwipesKey, userId);
-
-            if (Boolean.TRUE.equals(hasMutualLike)) {
-                log.info("It's a match between {} and {}!", userId, swipedUserId);
-                redisTemplate.opsForSet().add(MATCHES_KEY_PREFIX + userId, swipedUserId);
-                redisTemplate.opsForSet().add(MATCHES_KEY_PREFIX + swipedUserId, userId);
-                friendService.addFriend(userId, swipedUserId);
-
-                Optional<User> userA_Opt = userRepository.findById(userId);
-                Optional<User> userB_Opt = userRepository.findById(swipedUserId);
-
-                if (userA_Opt.isPresent() && userB_Opt.isPresent()) {
-                    User userA = userA_Opt.get(); // The user who just swiped
-
-                    // Use the new notification service method
-                    notificationService.sendMatchNotification(
-                            swipedUserId,
-                            userId,
-                            userA.getDogName()
-                    );
-
-                    response.put("isMatch", true);
-                    response.put("message", "It's a match with " + userB_Opt.get().getDogName() + "!");
-                } else {
-                    response.put("isMatch", true);
-                    response.put("message", "It's a match!");
-                }
-            }
+        log.info("It's a match between {} and {}!", userId, swipedUserId);
+        if (newMatch) {
+            eventPublisher.publishEvent(new MatchCreatedEvent(userId, swipedUserId));
+        }
+
+        // Name for the response comes from the Redis projection, not from MongoDB
+        List<MatchProfile> matched = matchProfileStore.findAll(List.of(swipedUserId));
+        response.put("isMatch", true);
+        if (!matched.isEmpty() && matched.get(0).getDogName() != null) {
+            response.put("message", "It's a match with " + matched.get(0).getDogName() + "!");
+        } else {
+            response.put("message", "It's a match!");
         }
         return response;
     }
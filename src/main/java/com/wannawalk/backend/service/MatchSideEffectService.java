@@ -0,0 +1,203 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.config.ChatWebSocketHandler;
+import com.wannawalk.backend.errors.AlreadyFriendsException;
+import com.wannawalk.backend.event.MatchCreatedEvent;
+import com.wannawalk.backend.model.MatchProfile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the work that follows a new match off the swipe request thread: the friendship, the push
+ * notification and one WebSocket event per user. Each step is written to an outbox in Redis
+ * ({@code match_effects:pending}, scored by when it is due) by the same script that creates the
+ * match (scripts/record_swipe.lua), so a step that fails or is interrupted by a restart is picked
+ * up again by the sweeper on any node, with exponential backoff between attempts. A step is claimed with SET NX on its idempotency key
+ * ({@code match_effects:{userId}:{matchedUserId}:{step}}), which then marks it done, so a retry
+ * after partial success never repeats a step that already went through. Steps that keep failing
+ * end up in {@code match_effects:failed}.
+ */
+@Service
+@Slf4j
+public class MatchSideEffectService {
+
+    private static final String EFFECTS_KEY_PREFIX = "match_effects:";
+    static final String PENDING_KEY = "match_effects:pending";
+    private static final String ATTEMPTS_KEY = "match_effects:attempts";
+    private static final String FAILED_KEY = "match_effects:failed";
+    private static final Duration IDEMPOTENCY_KEY_TTL = Duration.ofDays(7);
+    private static final String RUNNING = "running";
+    private static final String DONE = "done";
+    private static final List<String> STEPS =
+            List.of("friendship", "notification", "websocket_user", "websocket_matched_user");
+    // Due steps handed out per sweep
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ChatWebSocketHandler webSocketHandler;
+
+    @Autowired
+    private MatchProfileStore matchProfileStore;
+
+    @Value("${app.match.side-effects.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${app.match.side-effects.initial-backoff-ms}")
+    private long initialBackoffMs;
+
+    @Value("${app.match.side-effects.lease-seconds}")
+    private long leaseSeconds;
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Outbox entries of a new match, one per step, as queued together with the match.
+     */
+    static List<String> outboxEntries(String userId, String matchedUserId) {
+        return STEPS.stream()
+                .map(step -> step + ":" + userId + ":" + matchedUserId)
+                .toList();
+    }
+
+    // The entries are already in the outbox; running them now only saves waiting for the sweep
+    @EventListener
+    public void onMatchCreated(MatchCreatedEvent event) {
+        outboxEntries(event.getUserId(), event.getMatchedUserId())
+                .forEach(entry -> executor.execute(() -> run(entry)));
+    }
+
+    /**
+     * Hands out the steps that are due: retries whose backoff has passed and steps whose node
+     * went away before finishing them.
+     */
+    @Scheduled(fixedDelayString = "${app.match.side-effects.sweep-interval-ms}")
+    public void sweep() {
+        Set<String> due;
+        try {
+            due = redisTemplate.opsForZSet().rangeByScore(PENDING_KEY, 0, System.currentTimeMillis(), 0, SWEEP_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            log.error("Could not read pending match side effects: {}", e.getMessage());
+            return;
+        }
+        if (due == null) return;
+        for (String entry : due) {
+            executor.execute(() -> run(entry));
+        }
+    }
+
+    private void run(String entry) {
+        String[] parts = entry.split(":", 3);
+        String step = parts[0];
+        String userId = parts[1];
+        String matchedUserId = parts[2];
+        String doneKey = EFFECTS_KEY_PREFIX + userId + ":" + matchedUserId + ":" + step;
+        Duration lease = Duration.ofSeconds(leaseSeconds);
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(doneKey, RUNNING, lease))) {
+                // Done already, or another node holds the lease and the sweeper retries after it
+                if (DONE.equals(redisTemplate.opsForValue().get(doneKey))) {
+                    redisTemplate.opsForZSet().remove(PENDING_KEY, entry);
+                }
+                return;
+            }
+            redisTemplate.opsForZSet().add(PENDING_KEY, entry, System.currentTimeMillis() + lease.toMillis());
+        } catch (DataAccessException e) {
+            log.warn("Could not claim match {} step for {} / {}: {}", step, userId, matchedUserId, e.getMessage());
+            return;
+        }
+
+        try {
+            perform(step, userId, matchedUserId);
+        } catch (Exception e) {
+            retryLater(entry, doneKey, e);
+            return;
+        }
+
+        try {
+            redisTemplate.opsForValue().set(doneKey, DONE, IDEMPOTENCY_KEY_TTL);
+            redisTemplate.opsForZSet().remove(PENDING_KEY, entry);
+            redisTemplate.opsForHash().delete(ATTEMPTS_KEY, entry);
+        } catch (DataAccessException e) {
+            log.warn("Could not mark match {} step for {} / {} as done: {}", step, userId, matchedUserId, e.getMessage());
+        }
+    }
+
+    private void perform(String step, String userId, String matchedUserId) {
+        switch (step) {
+            case "friendship" -> {
+                try {
+                    friendService.addFriend(userId, matchedUserId);
+                } catch (AlreadyFriendsException e) {
+                    // Added by QR code before matching is as good as done
+                    log.info("Skipping friendship for match {} / {}: {}", userId, matchedUserId, e.getMessage());
+                }
+            }
+            case "notification" ->
+                    notificationService.sendMatchNotification(matchedUserId, userId, dogNameOf(userId));
+            case "websocket_matched_user" -> webSocketHandler.sendEventToUser(matchedUserId, Map.of(
+                    "event", "new_match",
+                    "userId", userId,
+                    "name", dogNameOf(userId)));
+            case "websocket_user" -> webSocketHandler.sendEventToUser(userId, Map.of(
+                    "event", "new_match",
+                    "userId", matchedUserId,
+                    "name", dogNameOf(matchedUserId)));
+            default -> log.warn("Ignoring unknown match side effect step {}", step);
+        }
+    }
+
+    private void retryLater(String entry, String doneKey, Exception cause) {
+        try {
+            redisTemplate.delete(doneKey);
+            Long attempt = redisTemplate.opsForHash().increment(ATTEMPTS_KEY, entry, 1);
+            if (attempt != null && attempt >= maxAttempts) {
+                log.error("Giving up on match side effect {} after {} attempts: {}", entry, attempt, cause.getMessage());
+                redisTemplate.opsForList().rightPush(FAILED_KEY, entry);
+                redisTemplate.opsForZSet().remove(PENDING_KEY, entry);
+                redisTemplate.opsForHash().delete(ATTEMPTS_KEY, entry);
+                return;
+            }
+            long attempts = attempt == null ? 1 : attempt;
+            long backoff = initialBackoffMs * (1L << (attempts - 1));
+            log.warn("Match side effect {} failed (attempt {}), retrying in {} ms: {}",
+                    entry, attempts, backoff, cause.getMessage());
+            redisTemplate.opsForZSet().add(PENDING_KEY, entry, System.currentTimeMillis() + backoff);
+        } catch (DataAccessException e) {
+            // The entry stays in the outbox and is retried once its lease runs out
+            log.error("Could not reschedule match side effect {}: {}", entry, e.getMessage());
+        }
+    }
+
+    private String dogNameOf(String userId) {
+        List<MatchProfile> profiles = matchProfileStore.findAll(List.of(userId));
+        return profiles.isEmpty() || profiles.get(0).getDogName() == null ? "Someone" : profiles.get(0).getDogName();
+    }
+}
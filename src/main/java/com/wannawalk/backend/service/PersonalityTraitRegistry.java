@@ -0,0 +1,48 @@
+package com.wannawalk.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Maps the fixed personality vocabulary to bit positions so a set of traits fits in a {@code long}.
+ * Positions follow the order of {@code app.match.personality-traits}; that list is append-only,
+ * reordering or removing entries would silently change the meaning of every stored mask.
+ */
+@Component
+public class PersonalityTraitRegistry {
+
+    private final Map<String, Integer> bitPositions = new HashMap<>();
+
+    public PersonalityTraitRegistry(@Value("${app.match.personality-traits}") List<String> traits) {
+        if (traits.size() > Long.SIZE) {
+            throw new IllegalStateException("At most " + Long.SIZE + " personality traits fit in a mask, got " + traits.size());
+        }
+        for (int i = 0; i < traits.size(); i++) {
+            bitPositions.put(traits.get(i).trim(), i);
+        }
+    }
+
+    /**
+     * Returns the mask of the given traits. Traits outside the vocabulary are ignored.
+     */
+    public long maskOf(Collection<String> traits) {
+        if (traits == null) return 0L;
+        long mask = 0L;
+        for (String trait : traits) {
+            Integer position = bitPositions.get(trait);
+            if (position != null) {
+                mask |= 1L << position;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * True if every trait is part of the vocabulary, i.e. the mask describes the list exactly.
+     */
+    public boolean isFullyRegistered(Collection<String> traits) {
+        return traits == null || bitPositions.keySet().containsAll(traits);
+    }
+}
@@ -0,0 +1,91 @@
+package com.wannawalk.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wannawalk.backend.dto.PostResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Read-through cache of rendered posts in Redis ({@code post_response:{postId}}), for posts opened
+ * over and over (e.g. from notifications). Entries are viewer-independent: {@code likedByViewer}
+ * is always stored as false and filled in per request. {@link PostService} evicts an entry on
+ * every like, unlike and comment change; the TTL bounds staleness of anything else, such as the
+ * author's name or picture.
+ * <p>
+ * An eviction leaves a short-lived marker in place of the entry and puts never overwrite an
+ * existing key (SET NX). A read that loaded the post before a change and puts it after the
+ * eviction therefore finds the marker and is dropped, instead of serving the old copy for a
+ * whole TTL.
+ * Counters {@code post.cache.hits} and {@code post.cache.misses} show how well it works.
+ */
+@Component
+@Slf4j
+public class PostResponseCache {
+
+    private static final String POST_RESPONSE_KEY_PREFIX = "post_response:";
+    private static final String EVICTED = "evicted";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration evictionHold;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public PostResponseCache(RedisTemplate<String, String> redisTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.feed.post-cache.ttl-seconds}") long ttlSeconds,
+                             @Value("${app.feed.post-cache.eviction-hold-seconds}") long evictionHoldSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.evictionHold = Duration.ofSeconds(evictionHoldSeconds);
+        this.hits = meterRegistry.counter("post.cache.hits");
+        this.misses = meterRegistry.counter("post.cache.misses");
+    }
+
+    /**
+     * The cached post, or null on a miss. Redis errors count as a miss.
+     */
+    public PostResponse get(String postId) {
+        try {
+            String json = redisTemplate.opsForValue().get(POST_RESPONSE_KEY_PREFIX + postId);
+            if (json != null && !EVICTED.equals(json)) {
+                hits.increment();
+                return objectMapper.readValue(json, PostResponse.class);
+            }
+        } catch (Exception e) {
+            log.error("Could not read cached post {}: {}", postId, e.getMessage());
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(PostResponse post) {
+        try {
+            boolean likedByViewer = post.isLikedByViewer();
+            post.setLikedByViewer(false);
+            String json = objectMapper.writeValueAsString(post);
+            post.setLikedByViewer(likedByViewer);
+            redisTemplate.opsForValue().setIfAbsent(POST_RESPONSE_KEY_PREFIX + post.getId(), json, ttl);
+        } catch (Exception e) {
+            log.error("Could not cache post {}: {}", post.getId(), e.getMessage());
+        }
+    }
+
+    public void evict(String postId) {
+        try {
+            redisTemplate.opsForValue().set(POST_RESPONSE_KEY_PREFIX + postId, EVICTED, evictionHold);
+        } catch (Exception e) {
+            log.error("Could not evict cached post {}: {}", postId, e.getMessage());
+        }
+    }
+}
@@ -1,31 +1,84 @@
 package com.wannawalk.backend.service;
 
 import com.wannawalk.backend.dto.CommentRequest;
+import com.wannawalk.backend.dto.CommentResponse;
+import com.wannawalk.backend.dto.CursorPage;
+import com.wannawalk.backend.dto.FeedDelta;
 import com.wannawalk.backend.dto.PostRequest;
 import com.wannawalk.backend.dto.PostResponse;
+import com.wannawalk.backend.dto.UserSummary;
+import com.wannawalk.backend.event.FriendshipChangedEvent;
+import com.wannawalk.backend.errors.InvalidCursorException;
 import com.wannawalk.backend.model.Comment;
 import com.wannawalk.backend.model.Post;
+import com.wannawalk.backend.model.PostLike;
 import com.wannawalk.backend.model.User;
 import com.wannawalk.backend.repository.CommentRepository;
+import com.wannawalk.backend.repository.PostLikeRepository;
 import com.wannawalk.backend.repository.PostRepository;
 import com.wannawalk.backend.repository.UserRepository;
+import com.wannawalk.backend.service.TimelineStore.TimelineEntry;
 
+import lombok.extern.slf4j.Slf4j;
+
+import com.mongodb.DBRef;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.time.ZoneOffset;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Slf4j
 public class PostService {
 
+    // Feed and comment cursors are "<createdAt epoch millis>:<id>" of the last item handed out
+    private static final char CURSOR_SEPARATOR = ':';
+    // Posts hydrated together while streaming: bounds memory and keeps queries per post constant
+    private static final int STREAM_CHUNK_SIZE = 50;
+    // Bounds the delta cursor; past it, posts in the overlap window may be handed out twice
+    private static final int MAX_DELTA_SEEN_POSTS = 100;
+
+    /**
+     * Position of the last comment handed out, the comment counterpart of a feed {@link TimelineEntry}.
+     */
+    record CommentCursor(String commentId, long createdAtMillis) {
+    }
+
+    /**
+     * Feed delta position: the newest activity handed out, plus the activities (post and time)
+     * already handed out within the overlap window behind it, which the next refresh re-scans for
+     * late writes. Encoded as "<activity epoch millis>:<post id>[:<post id>.<millis>,...]".
+     */
+    record DeltaCursor(long activityAtMillis, String postId, Set<String> seen) {
+    }
+
     @Autowired
     private PostRepository postRepository;
     @Autowired
@@ -33,122 +86,610 @@ public class PostService {
     @Autowired
     private CommentRepository commentRepository;
     @Autowired
+    private PostLikeRepository postLikeRepository;
+    @Autowired
     private NotificationService notificationService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private TimelineStore timelineStore;
+    @Autowired
+    private UserSummaryService userSummaryService;
+    @Autowired
+    private PostResponseCache postResponseCache;
+
+    @Value("${app.feed.latest-comments-per-post}")
+    private int latestCommentsPerPost;
+
+    @Value("${app.feed.delta.overlap-ms}")
+    private long deltaOverlapMillis;
 
 
     public PostResponse createPost(String userId, PostRequest postRequest) {
         User author = findUserById(userId);
         Post post = new Post();
         post.setAuthor(author);
+        post.setAuthorId(author.getId());
         post.setDescription(postRequest.getDescription());
         post.setImageUrl(postRequest.getImageUrl());
         post.setLocation(postRequest.getLocation());
         post.setTaggedFriends(postRequest.getTaggedFriends());
-        Post savedPost = postRepository.save(post);
-        return mapPostToResponse(savedPost);
+        Post savedPost = insertPost(post);
+        // Fan out on write: the author and all their friends see the post in their timelines
+        timelineStore.push(feedAuthorIds(author), timelineEntryOf(savedPost));
+        return toResponses(List.of(savedPost), null).get(0);
     }
 
-    public List<PostResponse> getPostsForUser(String userId) {
-        return postRepository.findByAuthorIdOrderByCreatedAtDesc(userId).stream()
-                .map(this::mapPostToResponse)
-                .collect(Collectors.toList());
+    /**
+     * Inserts a new post with lastActivityAt from the database server's clock, like every later
+     * bump (see {@link #updatePost}), so creation and later activity order the same way. Written as
+     * an upsert on a fresh id, since a plain insert cannot take a server-side date.
+     */
+    private Post insertPost(Post post) {
+        post.setId(new ObjectId().toHexString());
+        post.setLastActivityAt(null);
+        Document fields = new Document();
+        mongoTemplate.getConverter().write(post, fields);
+        fields.remove("_id");
+        Update insert = new Update();
+        fields.forEach(insert::setOnInsert);
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(new ObjectId(post.getId()))),
+                insert.currentDate("lastActivityAt"), Post.class);
+        return post;
+    }
+
+    /**
+     * A user's posts, newest first, on the (author.$id, createdAt) index. Matches the author DBRef
+     * rather than authorId, which legacy posts only get once LegacyPostMigration has run.
+     */
+    public List<PostResponse> getPostsForUser(String userId, String viewerId) {
+        if (!ObjectId.isValid(userId)) return new ArrayList<>();
+        return toResponses(findFeedPosts(List.of(userId), null, 0, false), viewerId);
     }
 
     public List<PostResponse> getFeedForUser(String userId) {
-        User currentUser = findUserById(userId);
-        List<String> userIds = new ArrayList<>();
-        userIds.add(currentUser.getId());
+        return toResponses(findFeedPosts(feedAuthorIds(findUserById(userId)), null, 0, false), userId);
+    }
+
+    /**
+     * Same posts as {@link #getFeedForUser}, read from a MongoDB cursor and handed to {@code sink}
+     * in hydrated chunks, so memory stays bounded by the chunk size however long the feed is.
+     */
+    public void streamFeedForUser(String userId, Consumer<List<PostResponse>> sink) {
+        streamPosts(feedQuery(feedAuthorIds(findUserById(userId)), null, 0, false), userId, sink);
+    }
+
+    /**
+     * Same posts as {@link #getPostsForUser}, streamed like {@link #streamFeedForUser}.
+     */
+    public void streamPostsForUser(String userId, String viewerId, Consumer<List<PostResponse>> sink) {
+        streamPosts(feedQuery(List.of(userId), null, 0, false), viewerId, sink);
+    }
+
+    private void streamPosts(Query query, String viewerId, Consumer<List<PostResponse>> sink) {
+        List<Post> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        try (Stream<Post> posts = mongoTemplate.stream(query, Post.class)) {
+            Iterator<Post> iterator = posts.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == STREAM_CHUNK_SIZE) {
+                    sink.accept(toResponses(chunk, viewerId));
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            sink.accept(toResponses(chunk, viewerId));
+        }
+    }
+
+    /**
+     * One page of the home feed (the user's and their friends' posts, newest first). Served from
+     * the user's timeline in Redis, which is built from MongoDB on the first read, and then from a
+     * single MongoDB query on the (author, createdAt) index for posts older than the trimmed
+     * timeline or when Redis is unavailable. {@code before} is the cursor of the previous page;
+     * posts with the same timestamp are ordered by ID so none are skipped or repeated.
+     */
+    public CursorPage<PostResponse> getFeedPage(String userId, String before, int limit) {
+        TimelineEntry cursor = parseCursor(before);
+        List<TimelineEntry> entries = timelineStore.readPage(userId, cursor, limit + 1);
+        if (entries == null && cursor == null) {
+            rebuildTimeline(findUserById(userId));
+            entries = timelineStore.readPage(userId, null, limit + 1);
+        }
+        if (entries == null) {
+            List<Post> posts = findFeedPosts(feedAuthorIds(findUserById(userId)), cursor, limit + 1, false);
+            boolean hasMore = posts.size() > limit;
+            posts = posts.subList(0, Math.min(limit, posts.size()));
+            String nextCursor = hasMore ? encodeCursor(timelineEntryOf(posts.get(posts.size() - 1))) : null;
+            return new CursorPage<>(toResponses(posts, userId), nextCursor);
+        }
+
+        boolean hasMore = entries.size() > limit;
+        entries = entries.subList(0, Math.min(limit, entries.size()));
+        List<Post> posts = hydrate(userId, entries);
+        TimelineEntry last = entries.isEmpty() ? cursor : entries.get(entries.size() - 1);
+
+        if (!hasMore && entries.size() < limit && timelineStore.isTrimmed(userId)) {
+            // The rest of the feed was trimmed off the timeline, continue from MongoDB
+            int remaining = limit - entries.size();
+            List<Post> older = findFeedPosts(feedAuthorIds(findUserById(userId)), last, remaining + 1, false);
+            hasMore = older.size() > remaining;
+            older = older.subList(0, Math.min(remaining, older.size()));
+            posts.addAll(older);
+            if (!older.isEmpty()) {
+                last = timelineEntryOf(older.get(older.size() - 1));
+            }
+        }
+        return new CursorPage<>(toResponses(posts, userId), hasMore ? encodeCursor(last) : null);
+    }
+
+    /**
+     * Feed posts with activity (created, liked/unliked, commented) after {@code since}, oldest
+     * activity first, from the (author, lastActivityAt) index. Without {@code since} it only
+     * returns the cursor of the latest activity, as a baseline for the next refresh.
+     * <p>
+     * An activity time is taken before its write commits, so a write can become visible after a
+     * refresh already moved past its time. Each refresh therefore re-scans {@code delta.overlap-ms}
+     * behind the cursor and skips the activities the cursor lists as already handed out; a later
+     * activity on a listed post has another time, so it is handed out again.
+     */
+    public FeedDelta getFeedDelta(String userId, String since, int limit) {
+        List<ObjectId> authorIds = feedAuthorIds(findUserById(userId)).stream().map(ObjectId::new).toList();
+        Criteria byAuthor = Criteria.where("author.$id").in(authorIds);
+        DeltaCursor cursor = parseDeltaCursor(since);
+
+        if (cursor == null) {
+            Query latest = new Query(byAuthor)
+                    .with(Sort.by(Sort.Order.desc("lastActivityAt"), Sort.Order.desc("_id")))
+                    .limit(MAX_DELTA_SEEN_POSTS);
+            latest.fields().include("_id").include("lastActivityAt");
+            List<Post> recent = mongoTemplate.find(latest, Post.class);
+            if (recent.isEmpty()) {
+                return new FeedDelta(new ArrayList<>(), null, false);
+            }
+            TimelineEntry newest = activityEntryOf(recent.get(0));
+            DeltaCursor baseline = new DeltaCursor(newest.createdAtMillis(), newest.postId(), Set.of());
+            return new FeedDelta(new ArrayList<>(), encodeDeltaCursor(advance(baseline, recent)), false);
+        }
+
+        Instant rescanFrom = Instant.ofEpochMilli(cursor.activityAtMillis() - deltaOverlapMillis);
+        Query query = new Query(new Criteria().andOperator(byAuthor, Criteria.where("lastActivityAt").gte(rescanFrom)))
+                .with(Sort.by(Sort.Order.asc("lastActivityAt"), Sort.Order.asc("_id")))
+                .limit(limit + 1 + cursor.seen().size());
+        List<Post> posts = new ArrayList<>();
+        for (Post post : mongoTemplate.find(query, Post.class)) {
+            if (!cursor.seen().contains(seenKey(activityEntryOf(post)))) {
+                posts.add(post);
+            }
+        }
+
+        boolean hasMore = posts.size() > limit;
+        posts = posts.subList(0, Math.min(limit, posts.size()));
+        String nextCursor = posts.isEmpty() ? since : encodeDeltaCursor(advance(cursor, posts));
+        return new FeedDelta(toResponses(posts, userId), nextCursor, hasMore);
+    }
+
+    /**
+     * The cursor after handing out {@code posts}: at the newest activity seen so far, listing
+     * every activity handed out within the overlap window behind it.
+     */
+    private DeltaCursor advance(DeltaCursor cursor, List<Post> posts) {
+        TimelineEntry newest = new TimelineEntry(cursor.postId(), cursor.activityAtMillis());
+        for (Post post : posts) {
+            TimelineEntry entry = activityEntryOf(post);
+            if (isAfter(entry, newest.createdAtMillis(), newest.postId())) {
+                newest = entry;
+            }
+        }
+        long windowStart = newest.createdAtMillis() - deltaOverlapMillis;
+        Set<String> seen = new LinkedHashSet<>();
+        seen.add(seenKey(newest));
+        for (Post post : posts) {
+            TimelineEntry entry = activityEntryOf(post);
+            if (entry.createdAtMillis() >= windowStart) {
+                seen.add(seenKey(entry));
+            }
+        }
+        for (String key : cursor.seen()) {
+            if (seenMillis(key) >= windowStart) {
+                seen.add(key);
+            }
+        }
+        return new DeltaCursor(newest.createdAtMillis(), newest.postId(),
+                seen.stream().limit(MAX_DELTA_SEEN_POSTS).collect(Collectors.toCollection(LinkedHashSet::new)));
+    }
+
+    private static boolean isAfter(TimelineEntry activity, long activityAtMillis, String postId) {
+        return activity.createdAtMillis() > activityAtMillis
+                || activity.createdAtMillis() == activityAtMillis && activity.postId().compareTo(postId) > 0;
+    }
+
+    private static String seenKey(TimelineEntry activity) {
+        return activity.postId() + "." + activity.createdAtMillis();
+    }
+
+    private static long seenMillis(String seenKey) {
+        return Long.parseLong(seenKey.substring(seenKey.indexOf('.') + 1));
+    }
+
+    private TimelineEntry activityEntryOf(Post post) {
+        Instant activityAt = post.getLastActivityAt() != null ? post.getLastActivityAt() : post.getCreatedAt();
+        return new TimelineEntry(post.getId(), activityAt.toEpochMilli());
+    }
+
+    /**
+     * Keeps timelines in line with the friend graph: a new friend's recent posts are added to the
+     * other user's timeline, and removed again when the friendship ends.
+     */
+    @EventListener
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        try {
+            List<TimelineEntry> userPosts = recentPostsOf(event.getUserId());
+            List<TimelineEntry> friendPosts = recentPostsOf(event.getFriendId());
+            if (event.isAdded()) {
+                timelineStore.pushAll(List.of(event.getUserId()), friendPosts);
+                timelineStore.pushAll(List.of(event.getFriendId()), userPosts);
+            } else {
+                timelineStore.remove(event.getUserId(), friendPosts.stream().map(TimelineEntry::postId).toList());
+                timelineStore.remove(event.getFriendId(), userPosts.stream().map(TimelineEntry::postId).toList());
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not update timelines of {} and {}: {}", event.getUserId(), event.getFriendId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a missing timeline. Posts created while MongoDB is read are pushed into the timeline
+     * already, since the build claims it first.
+     */
+    private void rebuildTimeline(User user) {
+        if (!timelineStore.startBuild(user.getId())) return;
+        List<TimelineEntry> entries = findFeedPosts(feedAuthorIds(user), null, timelineStore.getMaxLength(), true)
+                .stream()
+                .map(this::timelineEntryOf)
+                .toList();
+        timelineStore.build(user.getId(), entries);
+    }
+
+    private List<TimelineEntry> recentPostsOf(String authorId) {
+        return findFeedPosts(List.of(authorId), null, timelineStore.getMaxLength(), true).stream()
+                .map(this::timelineEntryOf)
+                .toList();
+    }
+
+    /**
+     * Loads the timeline's posts in one query, in timeline order. Posts that no longer exist are
+     * dropped from the timeline.
+     */
+    private List<Post> hydrate(String userId, List<TimelineEntry> entries) {
+        List<String> postIds = entries.stream().map(TimelineEntry::postId).toList();
+        Map<String, Post> byId = new HashMap<>();
+        postRepository.findAllById(postIds).forEach(post -> byId.put(post.getId(), post));
+
+        List<Post> posts = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String postId : postIds) {
+            Post post = byId.get(postId);
+            if (post != null) {
+                posts.add(post);
+            } else {
+                missing.add(postId);
+            }
+        }
+        timelineStore.remove(userId, missing);
+        return posts;
+    }
+
+    /**
+     * Feed posts of the given authors, newest first, strictly after {@code before} if given.
+     * A limit of 0 means no limit; {@code idsOnly} loads just the ID and createdAt.
+     */
+    private List<Post> findFeedPosts(List<String> authorIds, TimelineEntry before, int limit, boolean idsOnly) {
+        return mongoTemplate.find(feedQuery(authorIds, before, limit, idsOnly), Post.class);
+    }
 
-        if (currentUser.getFriends() != null) {
+    private Query feedQuery(List<String> authorIds, TimelineEntry before, int limit, boolean idsOnly) {
+        // author is a DBRef, so match on its stored id
+        Criteria criteria = Criteria.where("author.$id").in(authorIds.stream().map(ObjectId::new).toList());
+        if (before != null) {
+            criteria = new Criteria().andOperator(criteria, createdBefore(before.createdAtMillis(), before.postId()));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")))
+                .limit(limit);
+        if (idsOnly) {
+            query.fields().include("_id").include("createdAt");
+        }
+        return query;
+    }
+
+    private List<String> feedAuthorIds(User user) {
+        List<String> authorIds = new ArrayList<>();
+        authorIds.add(user.getId());
+
+        if (user.getFriends() != null) {
             Pattern pattern = Pattern.compile("([a-f0-9]{24})");
-            currentUser.getFriends().forEach(friendIdString -> {
+            user.getFriends().forEach(friendIdString -> {
                 Matcher matcher = pattern.matcher(friendIdString);
                 if (matcher.find()) {
-                    userIds.add(matcher.group(1));
+                    authorIds.add(matcher.group(1));
                 }
             });
         }
+        return authorIds;
+    }
+
+    private TimelineEntry timelineEntryOf(Post post) {
+        return new TimelineEntry(post.getId(), post.getCreatedAt().toEpochMilli());
+    }
+
+    static TimelineEntry parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        int separator = cursor.indexOf(CURSOR_SEPARATOR);
+        if (separator < 0 || !ObjectId.isValid(cursor.substring(separator + 1))) {
+            throw new InvalidCursorException(cursor);
+        }
+        return new TimelineEntry(cursor.substring(separator + 1), parseMillis(cursor, cursor.substring(0, separator)));
+    }
 
-        // TODO: This is inefficient. Refactor to make a single database call to fetch all posts.
-        List<Post> allPosts = new ArrayList<>();
-        for (String id : userIds) {
-            allPosts.addAll(postRepository.findByAuthorIdOrderByCreatedAtDesc(id));
+    static CommentCursor parseCommentCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        int separator = cursor.indexOf(CURSOR_SEPARATOR);
+        if (separator < 0 || !ObjectId.isValid(cursor.substring(separator + 1))) {
+            throw new InvalidCursorException(cursor);
         }
+        return new CommentCursor(cursor.substring(separator + 1), parseMillis(cursor, cursor.substring(0, separator)));
+    }
 
-        allPosts.sort(Comparator.comparing(Post::getCreatedAt).reversed());
+    private static long parseMillis(String cursor, String millis) {
+        try {
+            return Long.parseLong(millis);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
 
-        return allPosts.stream()
-                .map(this::mapPostToResponse)
+    static String encodeCommentCursor(CommentCursor cursor) {
+        return cursor.createdAtMillis() + String.valueOf(CURSOR_SEPARATOR) + cursor.commentId();
+    }
+
+    static DeltaCursor parseDeltaCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        String[] parts = cursor.split(String.valueOf(CURSOR_SEPARATOR), -1);
+        if (parts.length < 2 || parts.length > 3 || !ObjectId.isValid(parts[1])) {
+            throw new InvalidCursorException(cursor);
+        }
+        Set<String> seen = new LinkedHashSet<>();
+        if (parts.length == 3 && !parts[2].isEmpty()) {
+            for (String key : parts[2].split(",")) {
+                int dot = key.indexOf('.');
+                if (dot < 0 && ObjectId.isValid(key)) {
+                    // Older cursors listed post ids only; those posts are handed out once more
+                    continue;
+                }
+                if (dot < 0 || !ObjectId.isValid(key.substring(0, dot))) {
+                    throw new InvalidCursorException(cursor);
+                }
+                seen.add(key.substring(0, dot) + "." + parseMillis(cursor, key.substring(dot + 1)));
+            }
+        }
+        return new DeltaCursor(parseMillis(cursor, parts[0]), parts[1], seen);
+    }
+
+    static String encodeDeltaCursor(DeltaCursor cursor) {
+        return cursor.activityAtMillis() + String.valueOf(CURSOR_SEPARATOR) + cursor.postId()
+                + CURSOR_SEPARATOR + String.join(",", cursor.seen());
+    }
+
+    static String encodeCursor(TimelineEntry entry) {
+        return entry.createdAtMillis() + String.valueOf(CURSOR_SEPARATOR) + entry.postId();
+    }
+
+    /**
+     * Maps a page of posts to responses with a fixed number of queries, whatever the page size:
+     * one for the summaries of all post and comment authors, one for the viewer's likes.
+     */
+    private List<PostResponse> toResponses(List<Post> posts, String viewerId) {
+        if (posts.isEmpty()) return new ArrayList<>();
+
+        Set<String> authorIds = new HashSet<>();
+        for (Post post : posts) {
+            authorIds.add(authorIdOf(post));
+            post.getLatestComments().forEach(comment -> authorIds.add(authorIdOf(comment)));
+        }
+        Map<String, UserSummary> authors = userSummaryService.findAll(authorIds);
+
+        Set<String> liked = new HashSet<>();
+        if (viewerId != null) {
+            List<String> postIds = posts.stream().map(Post::getId).toList();
+            postLikeRepository.findByUserIdAndPostIdIn(viewerId, postIds)
+                    .forEach(like -> liked.add(like.getPostId()));
+        }
+        return posts.stream()
+                .map(post -> mapPostToResponse(post, liked.contains(post.getId()), authors))
+                .collect(Collectors.toList());
+    }
+
+    private List<CommentResponse> toCommentResponses(List<Comment> comments) {
+        Set<String> authorIds = comments.stream().map(this::authorIdOf).collect(Collectors.toSet());
+        Map<String, UserSummary> authors = userSummaryService.findAll(authorIds);
+        return comments.stream()
+                .map(comment -> mapCommentToResponse(comment, authors))
                 .collect(Collectors.toList());
     }
 
+    // Documents written before authorId existed fall back to resolving the author reference
+    private String authorIdOf(Post post) {
+        return post.getAuthorId() != null ? post.getAuthorId() : post.getAuthor().getId();
+    }
+
+    private String authorIdOf(Comment comment) {
+        return comment.getAuthorId() != null ? comment.getAuthorId() : comment.getAuthor().getId();
+    }
+
     // --- NEW: Service method to get a single post ---
-    public PostResponse getPostById(String postId) {
-        Post post = findPostById(postId);
-        return mapPostToResponse(post);
+    public PostResponse getPostById(String postId, String viewerId) {
+        PostResponse response = postResponseCache.get(postId);
+        if (response == null) {
+            response = toResponses(List.of(findPostById(postId)), null).get(0);
+            postResponseCache.put(response);
+        }
+        // The cached copy is shared by all viewers, so the viewer's like is always looked up
+        response.setLikedByViewer(viewerId != null && postLikeRepository.existsByPostIdAndUserId(postId, viewerId));
+        return response;
     }
 
+    /**
+     * Likes or unlikes a post. Only the request that actually inserted or deleted the like moves
+     * the counter, so concurrent taps can't double count; a like racing an existing one hits the
+     * unique (postId, userId) index and is reported as liked.
+     */
     public boolean toggleLike(String userId, String postId) {
-        User user = findUserById(userId);
-        Post post = findPostById(postId);
-        boolean isLiked;
-
-        boolean userExists = post.getLikes().stream().anyMatch(u -> u.getId().equals(userId));
-
-        if (userExists) {
-            post.getLikes().removeIf(u -> u.getId().equals(userId));
-            isLiked = false;
-        } else {
-            post.getLikes().add(user);
-            isLiked = true;
-
-            // Notify post author if someone else liked the post
-            if (!post.getAuthor().getId().equals(userId)) {
-                notificationService.sendPostLikeNotification(
-                        post.getAuthor().getId(),
-                        userId,
-                        user.getDogName()
-                );
-            }
+        String postAuthorId = findPostAuthorId(postId);
+
+        if (postLikeRepository.deleteByPostIdAndUserId(postId, userId) > 0) {
+            updatePost(postId, new Update().inc("likeCount", -1));
+            postResponseCache.evict(postId);
+            return false;
+        }
+        try {
+            postLikeRepository.insert(new PostLike(postId, userId));
+        } catch (DuplicateKeyException e) {
+            return true;
+        }
+        updatePost(postId, new Update().inc("likeCount", 1));
+        postResponseCache.evict(postId);
+
+        // Notify post author if someone else liked the post
+        if (!postAuthorId.equals(userId)) {
+            notificationService.sendPostLikeNotification(
+                    postAuthorId,
+                    userId,
+                    findUserById(userId).getDogName()
+            );
         }
-        postRepository.save(post);
-        return isLiked;
+        return true;
     }
 
-    public Comment addComment(String userId, String postId, CommentRequest commentRequest) {
+    public CommentResponse addComment(String userId, String postId, CommentRequest commentRequest) {
         User author = findUserById(userId);
-        Post post = findPostById(postId);
-        Comment comment = new Comment(author, commentRequest.getText());
-        Comment savedComment = commentRepository.save(comment);
-        post.getComments().add(savedComment);
-        postRepository.save(post);
+        String postAuthorId = findPostAuthorId(postId);
+        Comment savedComment = commentRepository.save(new Comment(postId, author, commentRequest.getText()));
+        updatePost(postId, new Update()
+                .inc("commentCount", 1)
+                .push("latestComments").slice(-latestCommentsPerPost).each(savedComment));
+        postResponseCache.evict(postId);
 
         // Notify post author if someone else commented
-        if (!post.getAuthor().getId().equals(userId)) {
+        if (!postAuthorId.equals(userId)) {
             notificationService.sendPostCommentNotification(
-                    post.getAuthor().getId(),
+                    postAuthorId,
                     userId,
                     author.getDogName(),
                     commentRequest.getText()
             );
         }
 
-        return savedComment;
+        return toCommentResponses(List.of(savedComment)).get(0);
     }
 
     public void deleteComment(String userId, String postId, String commentId) {
         Comment comment = commentRepository.findById(commentId)
                 .orElseThrow(() -> new RuntimeException("Comment not found with id: " + commentId));
+        // The URL's post must be the comment's, or another post's counters would be changed
+        if (!Objects.equals(comment.getPostId(), postId)) {
+            throw new RuntimeException("Comment " + commentId + " not found on post " + postId);
+        }
 
-        if (!Objects.equals(comment.getAuthor().getId(), userId)) {
+        if (!Objects.equals(authorIdOf(comment), userId)) {
             throw new SecurityException("User is not authorized to delete this comment.");
         }
 
-        Post post = findPostById(postId);
-        post.getComments().removeIf(c -> c.getId().equals(commentId));
-        postRepository.save(post);
-
+        String commentPostId = comment.getPostId();
         commentRepository.delete(comment);
+        updatePost(commentPostId, new Update().inc("commentCount", -1));
+        // Only if the comment was one of the copied latest ones, refill them from the collection
+        UpdateResult pulled = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(new ObjectId(commentPostId)).and("latestComments._id").is(new ObjectId(commentId))),
+                new Update().pull("latestComments", new Document("_id", new ObjectId(commentId))),
+                Post.class);
+        if (pulled.getModifiedCount() > 0) {
+            List<Comment> latest = new ArrayList<>(findComments(commentPostId, null, latestCommentsPerPost));
+            Collections.reverse(latest);
+            updatePost(commentPostId, new Update().set("latestComments", latest));
+        }
+        postResponseCache.evict(commentPostId);
+    }
+
+    /**
+     * One page of a post's comments, newest first. {@code before} is the cursor of the previous page.
+     */
+    public CursorPage<CommentResponse> getComments(String postId, String before, int limit) {
+        List<Comment> comments = findComments(postId, parseCommentCursor(before), limit + 1);
+        String nextCursor = null;
+        if (comments.size() > limit) {
+            comments = comments.subList(0, limit);
+            Comment last = comments.get(limit - 1);
+            nextCursor = encodeCommentCursor(new CommentCursor(last.getId(), last.getCreatedAt().toEpochMilli()));
+        }
+        return new CursorPage<>(toCommentResponses(comments), nextCursor);
+    }
+
+    private List<Comment> findComments(String postId, CommentCursor before, int limit) {
+        Criteria criteria = Criteria.where("postId").is(postId);
+        if (before != null) {
+            criteria = new Criteria().andOperator(criteria, createdBefore(before.createdAtMillis(), before.commentId()));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")))
+                .limit(limit);
+        return mongoTemplate.find(query, Comment.class);
+    }
+
+    /**
+     * Keyset condition for documents ordered by (createdAt, _id) descending: strictly older than
+     * the given position, with ties on createdAt broken by ID.
+     */
+    private Criteria createdBefore(long createdAtMillis, String id) {
+        Instant beforeCreatedAt = Instant.ofEpochMilli(createdAtMillis);
+        ObjectId beforeId = new ObjectId(id);
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(beforeCreatedAt),
+                Criteria.where("createdAt").is(beforeCreatedAt).and("_id").lt(beforeId));
+    }
+
+    /**
+     * Applies a targeted update to one post, without loading or rewriting the rest of it. Every
+     * such update is activity on the post, so it also bumps lastActivityAt for feed deltas, from
+     * the database server's clock so app nodes with skewed clocks agree on the order.
+     */
+    private void updatePost(String postId, Update update) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(new ObjectId(postId))),
+                update.currentDate("lastActivityAt"), Post.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("Post not found with id: " + postId);
+        }
+    }
+
+    /**
+     * Reads only the author reference of a post, so the post's author isn't resolved just for its ID.
+     */
+    private String findPostAuthorId(String postId) {
+        Query query = new Query(Criteria.where("_id").is(new ObjectId(postId)));
+        query.fields().include("authorId").include("author");
+        Document post = mongoTemplate.findOne(query, Document.class, mongoTemplate.getCollectionName(Post.class));
+        if (post == null) {
+            throw new RuntimeException("Post not found with id: " + postId);
+        }
+        if (post.getString("authorId") != null) {
+            return post.getString("authorId");
+        }
+        if (!(post.get("author") instanceof DBRef author)) {
+            throw new RuntimeException("Post has no author: " + postId);
+        }
+        return author.getId().toString();
     }
 
     private User findUserById(String userId) {
@@ -161,12 +702,16 @@ public class PostService {
                 .orElseThrow(() -> new RuntimeException("Post not found with id: " + postId));
     }
 
-    private PostResponse mapPostToResponse(Post post) {
+    private PostResponse mapPostToResponse(Post post, boolean likedByViewer, Map<String, UserSummary> authors) {
         PostResponse response = new PostResponse();
         response.setId(post.getId());
-        response.setAuthorId(post.getAuthor().getId());
-        response.setAuthorUsername(post.getAuthor().getDogName());
-        response.setAuthorProfilePicUrl(post.getAuthor().getProfilePicUrl());
+        String authorId = authorIdOf(post);
+        response.setAuthorId(authorId);
+        UserSummary author = authors.get(authorId);
+        if (author != null) {
+            response.setAuthorUsername(author.getDogName());
+            response.setAuthorProfilePicUrl(author.getProfilePicUrl());
+        }
         response.setDescription(post.getDescription());
         response.setImageUrl(post.getImageUrl());
         response.setLocation(post.getLocation());
@@ -175,8 +720,12 @@ public class PostService {
             response.setTaggedFriends(new ArrayList<>(post.getTaggedFriends()));
         }
 
-        response.setLikes(post.getLikes().stream().map(User::getId).collect(Collectors.toSet()));
-        response.setComments(post.getComments());
+        response.setLikeCount(post.getLikeCount());
+        response.setLikedByViewer(likedByViewer);
+        response.setCommentCount(post.getCommentCount());
+        response.setLatestComments(post.getLatestComments().stream()
+                .map(comment -> mapCommentToResponse(comment, authors))
+                .collect(Collectors.toList()));
 
         if (post.getCreatedAt() != null) {
             response.setCreatedAt(post.getCreatedAt());
@@ -184,4 +733,20 @@ public class PostService {
 
         return response;
     }
+
+    private CommentResponse mapCommentToResponse(Comment comment, Map<String, UserSummary> authors) {
+        CommentResponse response = new CommentResponse();
+        response.setId(comment.getId());
+        response.setPostId(comment.getPostId());
+        String authorId = authorIdOf(comment);
+        response.setAuthorId(authorId);
+        UserSummary author = authors.get(authorId);
+        if (author != null) {
+            response.setAuthorUsername(author.getDogName());
+            response.setAuthorProfilePicUrl(author.getProfilePicUrl());
+        }
+        response.setText(comment.getText());
+        response.setCreatedAt(comment.getCreatedAt());
+        return response;
+    }
 }
@@ -1,12 +1,14 @@
 package com.wannawalk.backend.service;
 
 import com.wannawalk.backend.dto.NotificationSettingsDto;
+import com.wannawalk.backend.event.MatchDeckRefreshEvent;
 import com.wannawalk.backend.model.NotificationSettings;
 import com.wannawalk.backend.model.User;
 import com.wannawalk.backend.model.User.MatchFilters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -15,10 +17,12 @@ import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import com.wannawalk.backend.dto.FriendResponse;
 import com.wannawalk.backend.dto.ProfileResponse;
 import com.wannawalk.backend.dto.ProfileUpdateRequest;
+import com.wannawalk.backend.dto.UserSummary;
 import com.wannawalk.backend.repository.UserRepository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,6 +40,18 @@ public class ProfileService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private MatchProfileStore matchProfileStore;
+
+    @Autowired
+    private UserSummaryService userSummaryService;
+
+    @Autowired
+    private PersonalityTraitRegistry traitRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // --- NEW: Inject PasswordEncoder for changing passwords ---
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -90,9 +106,12 @@ public class ProfileService {
         User user = findUserById(userId);
 
         user.setPersonality(updateRequest.getPersonality());
+        user.setPersonalityMask(traitRegistry.maskOf(updateRequest.getPersonality()));
         user.setMatchPreferences(updateRequest.getMatchPreferences());
 
         User updatedUser = userRepository.save(user);
+        matchProfileStore.save(updatedUser);
+        userSummaryService.invalidate(userId);
         return mapUserToProfileResponse(updatedUser, true);
     }
 
@@ -154,6 +173,8 @@ public class ProfileService {
 
         user.setMatchFilters(matchFilters);
         userRepository.save(user);
+        // The pre-computed deck was built with the old filters
+        eventPublisher.publishEvent(new MatchDeckRefreshEvent(userId, true));
     }
 
     // --- NEW METHOD ---
@@ -192,7 +213,8 @@ public class ProfileService {
                 .toUriString();
 
         user.setProfilePicUrl(newFileUrl);
-        userRepository.save(user);
+        matchProfileStore.save(userRepository.save(user));
+        userSummaryService.invalidate(userId);
 
         return newFileUrl;
     }
@@ -237,25 +259,21 @@ public class ProfileService {
     private ProfileResponse mapUserToProfileResponse(User user, boolean isPrivate) {
         List<FriendResponse> friends = new ArrayList<>();
         if (isPrivate && user.getFriends() != null) {
-            friends = user.getFriends().stream()
-                    .map(friendIdString -> {
-                        Pattern pattern = Pattern.compile("([a-f0-9]{24})");
-                        Matcher matcher = pattern.matcher(friendIdString);
-                        if (matcher.find()) {
-                            try {
-                                return findUserById(matcher.group(1));
-                            } catch (RuntimeException e) {
-                                // This can happen if a friend's account was deleted
-                                return null;
-                            }
-                        }
-                        return null;
-                    })
+            Pattern pattern = Pattern.compile("([a-f0-9]{24})");
+            List<String> friendIds = user.getFriends().stream()
+                    .map(pattern::matcher)
+                    .filter(Matcher::find)
+                    .map(matcher -> matcher.group(1))
+                    .collect(Collectors.toList());
+            // Friends whose account was deleted have no summary and are left out
+            Map<String, UserSummary> summaries = userSummaryService.findAll(friendIds);
+            friends = friendIds.stream()
+                    .map(summaries::get)
                     .filter(Objects::nonNull)
-                    .map(friendUser -> new FriendResponse(
-                            friendUser.getId(),
-                            friendUser.getDogName(),
-                            friendUser.getProfilePicUrl()
+                    .map(friend -> new FriendResponse(
+                            friend.getId(),
+                            friend.getDogName(),
+                            friend.getProfilePicUrl()
                     ))
                     .collect(Collectors.toList());
         }
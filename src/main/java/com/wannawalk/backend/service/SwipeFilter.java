@@ -0,0 +1,57 @@
+package com.wannawalk.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Bit positions of a member in a per-user swipe Bloom filter: double hashing over the first two
+ * 32-bit slices of the member's SHA-1. This is the only implementation; the swipe scripts get the
+ * positions as arguments. Existing filters were built with exactly this function, so changing it
+ * requires new filter keys.
+ * <p>
+ * Filter sizes are powers of two up to a fixed maximum, so positions computed for the maximum
+ * size reduce to any smaller filter with a plain modulo, which the scripts apply.
+ */
+final class SwipeFilter {
+
+    static final long MIN_BITS = 1024;
+
+    private SwipeFilter() {
+    }
+
+    static long[] positions(String member, long filterBits, int filterHashes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(member.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        long h1 = unsignedInt(digest, 0);
+        long h2 = unsignedInt(digest, 4);
+        long[] positions = new long[filterHashes];
+        for (int i = 0; i < filterHashes; i++) {
+            positions[i] = (h1 + i * h2) % filterBits;
+        }
+        return positions;
+    }
+
+    /**
+     * Filter size for a user with the given number of swipes: twice the bits they need today,
+     * rounded up to a power of two between {@link #MIN_BITS} and {@code maxBits}, so the filter
+     * is only rebuilt after the swipe count has doubled.
+     */
+    static long sizeFor(long swipes, int bitsPerSwipe, long maxBits) {
+        long cap = Long.highestOneBit(Math.max(maxBits, MIN_BITS));
+        long bits = MIN_BITS;
+        while (bits < cap && bits < swipes * bitsPerSwipe * 2) {
+            bits <<= 1;
+        }
+        return bits;
+    }
+
+    private static long unsignedInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xffL) << 24) | ((bytes[offset + 1] & 0xffL) << 16)
+                | ((bytes[offset + 2] & 0xffL) << 8) | (bytes[offset + 3] & 0xffL);
+    }
+}
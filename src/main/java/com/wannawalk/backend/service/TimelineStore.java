@@ -0,0 +1,276 @@
+package com.wannawalk.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Materialized home feed per user: a sorted set {@code timeline:{userId}} of post IDs scored by
+ * their createdAt (epoch millis), holding at most {@code app.feed.timeline.max-length} of the
+ * newest posts. Posts are pushed on write to the timelines of the author and their friends.
+ * <p>
+ * A missing timeline means "unknown": pushes skip it and the next read rebuilds it from MongoDB.
+ * Two marker members are never handed out: {@code #end} (score 0) is added by every build, so an
+ * empty feed is still a timeline and its absence means older posts were trimmed off; {@code #building}
+ * (score +inf) is there while a build reads MongoDB, so pushes in the meantime land in the timeline
+ * and readers treat it as missing. Redis failures are logged and reported as a missing timeline, so
+ * callers can always fall back to querying MongoDB.
+ */
+@Component
+@Slf4j
+public class TimelineStore {
+
+    private static final String TIMELINE_KEY_PREFIX = "timeline:";
+    // Timelines of inactive users expire and are rebuilt on their next read
+    private static final Duration TIMELINE_TTL = Duration.ofDays(7);
+    private static final String END_MARKER = "#end";
+    private static final String BUILDING_MARKER = "#building";
+    // A build that never completes (e.g. its node died) leaves a timeline that expires after this
+    private static final Duration BUILD_TIMEOUT = Duration.ofSeconds(60);
+    private static final RedisScript<Long> PUSH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/timeline_push.lua"), Long.class);
+    private static final RedisScript<Long> START_BUILD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/timeline_start_build.lua"), Long.class);
+
+    public record TimelineEntry(String postId, long createdAtMillis) {
+    }
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.feed.timeline.max-length}")
+    private int maxLength;
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Claims the build of a missing timeline. Returns false if the timeline exists (or is being
+     * built by another request) or Redis is unavailable; only a true result may be followed by
+     * {@link #build}.
+     */
+    public boolean startBuild(String userId) {
+        try {
+            Long started = redisTemplate.execute(START_BUILD_SCRIPT, List.of(TIMELINE_KEY_PREFIX + userId),
+                    BUILDING_MARKER, String.valueOf(BUILD_TIMEOUT.toSeconds()));
+            return started != null && started == 1;
+        } catch (DataAccessException e) {
+            log.error("Could not start building timeline for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Completes a timeline claimed with {@link #startBuild} from the user's newest feed posts,
+     * keeping posts pushed while they were read. An empty list stores an empty timeline.
+     */
+    public void build(String userId, List<TimelineEntry> entries) {
+        String key = TIMELINE_KEY_PREFIX + userId;
+        Set<TypedTuple<String>> tuples = toTuples(entries);
+        tuples.add(TypedTuple.of(END_MARKER, 0.0));
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    // Readers skip the timeline until the marker is gone, so they never see it half-built
+                    ops.opsForZSet().add(key, tuples);
+                    ops.opsForZSet().remove(key, BUILDING_MARKER);
+                    ops.opsForZSet().removeRange(key, 0, -(maxLength + 1));
+                    ops.expire(key, TIMELINE_TTL);
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.error("Could not build timeline for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a new post to the timelines of the given users, in one round trip.
+     */
+    public void push(Collection<String> userIds, TimelineEntry entry) {
+        pushAll(userIds, List.of(entry));
+    }
+
+    /**
+     * Adds posts to the existing timelines of the given users, trimming each to the max length.
+     * The script is sent by SHA; it is loaded once and again only after Redis lost it.
+     */
+    public void pushAll(Collection<String> userIds, List<TimelineEntry> entries) {
+        if (userIds.isEmpty() || entries.isEmpty()) return;
+        byte[][] args = new byte[2 + entries.size() * 2][];
+        args[1] = String.valueOf(maxLength).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < entries.size(); i++) {
+            args[2 + i * 2] = String.valueOf(entries.get(i).createdAtMillis()).getBytes(StandardCharsets.UTF_8);
+            args[3 + i * 2] = entries.get(i).postId().getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            try {
+                pushPipelined(userIds, args);
+            } catch (DataAccessException e) {
+                if (!isNoScript(e)) throw e;
+                // Pushes are idempotent, so resending the ones that did run is harmless
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands()
+                        .scriptLoad(PUSH_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                pushPipelined(userIds, args);
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not push {} posts to {} timelines: {}", entries.size(), userIds.size(), e.getMessage());
+        }
+    }
+
+    private void pushPipelined(Collection<String> userIds, byte[][] args) {
+        String sha = PUSH_SCRIPT.getSha1();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : userIds) {
+                byte[][] keysAndArgs = args.clone();
+                keysAndArgs[0] = (TIMELINE_KEY_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+                connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1, keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) return true;
+        }
+        return false;
+    }
+
+    public void remove(String userId, Collection<String> postIds) {
+        if (postIds.isEmpty()) return;
+        try {
+            redisTemplate.opsForZSet().remove(TIMELINE_KEY_PREFIX + userId, postIds.toArray());
+        } catch (DataAccessException e) {
+            log.error("Could not remove posts from timeline of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads up to {@code count} entries, newest first, that come after the given entry (null for
+     * the first page). Returns null if the user has no timeline, it is being built, or Redis is
+     * unavailable.
+     */
+    public List<TimelineEntry> readPage(String userId, TimelineEntry after, int count) {
+        String key = TIMELINE_KEY_PREFIX + userId;
+        try {
+            Set<TypedTuple<String>> tuples;
+            if (after == null) {
+                // The building marker scores +inf, so it would be first
+                tuples = redisTemplate.opsForZSet().reverseRangeWithScores(key, 0, count - 1);
+                if (tuples == null || tuples.isEmpty() || isBuilding(tuples.iterator().next())) {
+                    return null;
+                }
+            } else {
+                List<Object> headAndRank = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                        ops.opsForZSet().reverseRangeWithScores(key, 0, 0);
+                        ops.opsForZSet().reverseRank(key, after.postId());
+                        return null;
+                    }
+                });
+                @SuppressWarnings("unchecked")
+                Set<TypedTuple<String>> head = (Set<TypedTuple<String>>) headAndRank.get(0);
+                if (head == null || head.isEmpty() || isBuilding(head.iterator().next())) {
+                    return null;
+                }
+                Long rank = (Long) headAndRank.get(1);
+                if (rank != null) {
+                    // Same-score members are ordered by post ID, which matches the MongoDB feed order
+                    tuples = redisTemplate.opsForZSet().reverseRangeWithScores(key, rank + 1, rank + count);
+                } else {
+                    tuples = readBelow(key, after, count);
+                }
+            }
+            List<TimelineEntry> entries = new ArrayList<>();
+            if (tuples != null) {
+                for (TypedTuple<String> tuple : tuples) {
+                    if (END_MARKER.equals(tuple.getValue())) continue;
+                    entries.add(new TimelineEntry(tuple.getValue(), tuple.getScore().longValue()));
+                }
+            }
+            return entries;
+        } catch (DataAccessException e) {
+            log.error("Could not read timeline of user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Entries after a cursor whose post is no longer in the timeline: up to the cursor's score
+     * inclusive, less the ones at that score that do not sort below the cursor's post ID.
+     */
+    private Set<TypedTuple<String>> readBelow(String key, TimelineEntry after, int count) {
+        double score = after.createdAtMillis();
+        Long sameScore = redisTemplate.opsForZSet().count(key, score, score);
+        long extra = sameScore == null ? 0 : sameScore;
+        Set<TypedTuple<String>> tuples = redisTemplate.opsForZSet().reverseRangeByScoreWithScores(
+                key, Double.NEGATIVE_INFINITY, score, 0, count + extra);
+        Set<TypedTuple<String>> below = new LinkedHashSet<>();
+        if (tuples == null) return below;
+        for (TypedTuple<String> tuple : tuples) {
+            if (below.size() == count) break;
+            if (tuple.getScore() == score && tuple.getValue().compareTo(after.postId()) >= 0) continue;
+            below.add(tuple);
+        }
+        return below;
+    }
+
+    private static boolean isBuilding(TypedTuple<String> first) {
+        return BUILDING_MARKER.equals(first.getValue());
+    }
+
+    /**
+     * Whether the timeline has been trimmed to its max length, i.e. older posts may only be in
+     * MongoDB. A trim removes the end marker first, as it has the lowest score.
+     */
+    public boolean isTrimmed(String userId) {
+        String key = TIMELINE_KEY_PREFIX + userId;
+        try {
+            List<Object> markerAndSize = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForZSet().score(key, END_MARKER);
+                    ops.opsForZSet().zCard(key);
+                    return null;
+                }
+            });
+            Long size = (Long) markerAndSize.get(1);
+            return markerAndSize.get(0) == null && size != null && size >= maxLength;
+        } catch (DataAccessException e) {
+            log.error("Could not read timeline size of user {}: {}", userId, e.getMessage());
+            return true;
+        }
+    }
+
+    private Set<TypedTuple<String>> toTuples(List<TimelineEntry> entries) {
+        Set<TypedTuple<String>> tuples = new HashSet<>();
+        for (TimelineEntry entry : entries) {
+            tuples.add(TypedTuple.of(entry.postId(), (double) entry.createdAtMillis()));
+        }
+        return tuples;
+    }
+}
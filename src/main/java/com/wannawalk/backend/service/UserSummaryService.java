@@ -0,0 +1,86 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.dto.UserSummary;
+import com.wannawalk.backend.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Looks up {@link UserSummary}s for many users at once, so responses that show authors or friends
+ * cost one projected query instead of loading each full {@link User}.
+ * <p>
+ * Summaries are kept in a bounded in-memory LRU cache. {@link ProfileService} invalidates a user's
+ * entry when their name or picture changes; the TTL bounds how long other instances can serve
+ * the old values.
+ */
+@Service
+public class UserSummaryService {
+
+    private record CachedSummary(UserSummary summary, long expiresAtMillis) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.users.summary-cache.max-size}")
+    private int maxSize;
+
+    @Value("${app.users.summary-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    // Access-ordered, so the least recently read summary is evicted first
+    private final Map<String, CachedSummary> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSummary> eldest) {
+                    return size() > maxSize;
+                }
+            });
+
+    /**
+     * Summary of one user, or null if there is no such user.
+     */
+    public UserSummary find(String userId) {
+        return findAll(List.of(userId)).get(userId);
+    }
+
+    /**
+     * Summaries of the given users by ID. Unknown IDs are missing from the result.
+     */
+    public Map<String, UserSummary> findAll(Collection<String> userIds) {
+        Map<String, UserSummary> summaries = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String userId : userIds) {
+            CachedSummary cached = cache.get(userId);
+            if (cached != null && cached.expiresAtMillis() > now) {
+                summaries.put(userId, cached.summary());
+            } else {
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) return summaries;
+
+        Query query = new Query(Criteria.where("_id").in(missing));
+        query.fields().include("dogName").include("profilePicUrl");
+        long expiresAtMillis = now + ttlSeconds * 1000;
+        for (UserSummary summary : mongoTemplate.find(query, UserSummary.class, mongoTemplate.getCollectionName(User.class))) {
+            summaries.put(summary.getId(), summary);
+            cache.put(summary.getId(), new CachedSummary(summary, expiresAtMillis));
+        }
+        return summaries;
+    }
+
+    /**
+     * Drops the cached summary of a user; call after changing any of the summarized fields.
+     */
+    public void invalidate(String userId) {
+        cache.remove(userId);
+    }
+}
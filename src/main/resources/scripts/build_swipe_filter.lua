@@ -0,0 +1,36 @@
+-- Creates a user's swipe Bloom filter from the positions of all members of their swipe sets,
+-- computed by the caller. The caller read the sets before calling; if their sizes changed since,
+-- a swipe came in and the positions are incomplete, so nothing is written and the caller retries
+-- later. An existing filter is left alone.
+--
+-- KEYS[1] = right swipes of the user, KEYS[2] = left swipes of the user
+-- KEYS[3] = swipe Bloom filter of the user
+-- ARGV[1] = combined size of both sets when they were read, ARGV[2] = filter size in bits
+-- ARGV[3..n] = filter positions to set, already reduced to the filter size
+--
+-- Reply: 1 if the filter exists afterwards, 0 if the sets changed
+
+if redis.call('EXISTS', KEYS[3]) == 1 then
+    return 1
+end
+if redis.call('SCARD', KEYS[1]) + redis.call('SCARD', KEYS[2]) ~= tonumber(ARGV[1]) then
+    return 0
+end
+
+-- Allocates the whole filter, its length is how the other scripts learn its size
+redis.call('SETBIT', KEYS[3], tonumber(ARGV[2]) - 1, 0)
+local args = {}
+for i = 3, #ARGV do
+    args[#args + 1] = 'SET'
+    args[#args + 1] = 'u1'
+    args[#args + 1] = ARGV[i]
+    args[#args + 1] = 1
+    if #args >= 4000 then
+        redis.call('BITFIELD', KEYS[3], unpack(args))
+        args = {}
+    end
+end
+if #args > 0 then
+    redis.call('BITFIELD', KEYS[3], unpack(args))
+end
+return 1
@@ -0,0 +1,112 @@
+-- Tells which of the given candidates a user has already swiped on, in either direction.
+-- Candidates are first checked against the user's Bloom filter (one BITFIELD_RO per chunk);
+-- only filter positives are confirmed against the exact swipe sets. Bit positions are computed
+-- by the caller (SwipeFilter), so there is a single implementation of the hash.
+-- Until the old swipe keys are migrated, candidates not found so far are also checked against
+-- the user's legacy sets, which the filter does not cover.
+--
+-- KEYS[1] = right swipes of the user, KEYS[2] = left swipes of the user
+-- KEYS[3] = swipe Bloom filter of the user
+-- KEYS[4] = legacy right swipes of the user, KEYS[5] = legacy left swipes of the user
+-- ARGV[1] = number of hash functions k
+-- ARGV[2] = swipes from which the user gets a filter
+-- ARGV[3] = 1 to check the legacy sets, 0 once they are migrated
+-- ARGV[4..n] = per candidate: its user id followed by its k filter positions for the largest
+--              filter size, reduced here to the size of the user's filter
+--
+-- Reply: { buildFilter, flag per candidate } where a flag is 1 if the user swiped on it.
+-- Without a filter every candidate is checked against the exact sets; buildFilter is 1 if the
+-- user has enough swipes for one, telling the caller to build it.
+
+local hashes = tonumber(ARGV[1])
+local group = hashes + 1
+local checkLegacy = ARGV[3] == '1'
+local count = (#ARGV - 3) / group
+local bits = redis.call('STRLEN', KEYS[3]) * 8
+local filterPresent = bits > 0
+
+local buildFilter = 0
+if not filterPresent
+        and redis.call('SCARD', KEYS[1]) + redis.call('SCARD', KEYS[2]) >= tonumber(ARGV[2]) then
+    buildFilter = 1
+end
+
+local reply = { buildFilter }
+for c = 1, count do
+    reply[c + 1] = 0
+end
+
+local function memberAt(c)
+    return ARGV[4 + (c - 1) * group]
+end
+
+-- Keeps the BITFIELD_RO argument list (3 per hash per member) well below the Lua stack limit
+local chunkSize = 200
+for first = 1, count, chunkSize do
+    local last = math.min(first + chunkSize - 1, count)
+
+    -- Filter negatives skip the exact sets entirely
+    local maybe = {}
+    local maybeIndex = {}
+    if filterPresent then
+        local args = {}
+        for c = first, last do
+            local base = 4 + (c - 1) * group
+            for j = 1, hashes do
+                args[#args + 1] = 'GET'
+                args[#args + 1] = 'u1'
+                args[#args + 1] = tonumber(ARGV[base + j]) % bits
+            end
+        end
+        local bits = redis.call('BITFIELD_RO', KEYS[3], unpack(args))
+        for c = first, last do
+            local allSet = true
+            for j = 1, hashes do
+                if bits[(c - first) * hashes + j] == 0 then
+                    allSet = false
+                    break
+                end
+            end
+            if allSet then
+                maybe[#maybe + 1] = memberAt(c)
+                maybeIndex[#maybeIndex + 1] = c
+            end
+        end
+    else
+        for c = first, last do
+            maybe[#maybe + 1] = memberAt(c)
+            maybeIndex[#maybeIndex + 1] = c
+        end
+    end
+
+    if #maybe > 0 then
+        local swipedRight = redis.call('SMISMEMBER', KEYS[1], unpack(maybe))
+        local swipedLeft = redis.call('SMISMEMBER', KEYS[2], unpack(maybe))
+        for j = 1, #maybe do
+            if swipedRight[j] == 1 or swipedLeft[j] == 1 then
+                reply[maybeIndex[j] + 1] = 1
+            end
+        end
+    end
+
+    if checkLegacy then
+        local rest = {}
+        local restIndex = {}
+        for c = first, last do
+            if reply[c + 1] == 0 then
+                rest[#rest + 1] = memberAt(c)
+                restIndex[#restIndex + 1] = c
+            end
+        end
+        if #rest > 0 then
+            local legacyRight = redis.call('SMISMEMBER', KEYS[4], unpack(rest))
+            local legacyLeft = redis.call('SMISMEMBER', KEYS[5], unpack(rest))
+            for j = 1, #rest do
+                if legacyRight[j] == 1 or legacyLeft[j] == 1 then
+                    reply[restIndex[j] + 1] = 1
+                end
+            end
+        end
+    end
+end
+return reply
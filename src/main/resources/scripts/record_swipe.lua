@@ -0,0 +1,69 @@
+-- Records a swipe and, for a right swipe, settles the match in the same step: checks whether the
+-- other user already swiped right, claims the pair key, adds the match to both match sets and,
+-- for a new match, queues its side effects in the outbox, so a crash cannot leave a match
+-- without them. Touches both users' keys, which standalone Redis allows.
+--
+-- KEYS[1] = right swipes of the user, KEYS[2] = left swipes of the user
+-- KEYS[3] = swipe Bloom filter of the user
+-- KEYS[4] = right swipes of the swiped user, KEYS[5] = their legacy right swipes
+-- KEYS[6] = pair key of the two users
+-- KEYS[7] = matches of the user, KEYS[8] = matches of the swiped user
+-- KEYS[9] = pending match side effects (MatchSideEffectService)
+-- ARGV[1] = direction ('right' or 'left'), ARGV[2] = swiped user id, ARGV[3] = user id
+-- ARGV[4] = filter bits per swipe, ARGV[5] = largest filter size in bits
+-- ARGV[6] = 1 to also read the legacy swipe set, 0 once it is migrated
+-- ARGV[7] = current time in ms, ARGV[8] = number of side-effect entries m
+-- ARGV[9..8+m] = side-effect entries, queued as due now
+-- ARGV[9+m..n] = filter positions of the swiped user id for the largest filter size (SwipeFilter)
+--
+-- Reply: { isMatch, created } where created is 1 only for the swipe that created the match;
+-- matches from before the pair key existed are not created again
+
+local right = ARGV[1] == 'right'
+local setKey = KEYS[2]
+if right then
+    setKey = KEYS[1]
+end
+local added = redis.call('SADD', setKey, ARGV[2])
+
+-- A missing filter is built from the sets on the next exclusion check, which includes this swipe
+local bits = redis.call('STRLEN', KEYS[3]) * 8
+if bits > 0 and added == 1 then
+    local swipes = redis.call('SCARD', KEYS[1]) + redis.call('SCARD', KEYS[2])
+    if bits < tonumber(ARGV[5]) and swipes * tonumber(ARGV[4]) > bits then
+        -- Outgrown: dropped here and rebuilt at a larger size on the next check
+        redis.call('DEL', KEYS[3])
+    else
+        local args = {}
+        for i = 9 + tonumber(ARGV[8]), #ARGV do
+            args[#args + 1] = 'SET'
+            args[#args + 1] = 'u1'
+            args[#args + 1] = tonumber(ARGV[i]) % bits
+            args[#args + 1] = 1
+        end
+        redis.call('BITFIELD', KEYS[3], unpack(args))
+    end
+end
+
+if not right then
+    return { 0, 0 }
+end
+local mutual = redis.call('SISMEMBER', KEYS[4], ARGV[3]) == 1
+if not mutual and ARGV[6] == '1' then
+    mutual = redis.call('SISMEMBER', KEYS[5], ARGV[3]) == 1
+end
+if not mutual then
+    return { 0, 0 }
+end
+
+local alreadyMatched = redis.call('SISMEMBER', KEYS[7], ARGV[2]) == 1
+local claimed = redis.call('SET', KEYS[6], '1', 'NX')
+redis.call('SADD', KEYS[7], ARGV[2])
+redis.call('SADD', KEYS[8], ARGV[3])
+if claimed and not alreadyMatched then
+    for i = 9, 8 + tonumber(ARGV[8]) do
+        redis.call('ZADD', KEYS[9], ARGV[7], ARGV[i])
+    end
+    return { 1, 1 }
+end
+return { 1, 0 }
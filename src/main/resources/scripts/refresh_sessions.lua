@@ -0,0 +1,22 @@
+-- Heartbeat of a node: extends the node registration and chat presence of each of its users,
+-- unless the user has meanwhile reconnected to another node. A registration that expired while
+-- the session stayed open (e.g. a missed heartbeat) is written again.
+--
+-- KEYS = per user: node registration, then chat presence
+-- ARGV[1] = id of the calling node, ARGV[2] = registration TTL in ms
+--
+-- Reply: number of registrations refreshed
+
+local refreshed = 0
+for i = 1, #KEYS, 2 do
+    local node = redis.call('GET', KEYS[i])
+    if node == ARGV[1] then
+        redis.call('PEXPIRE', KEYS[i], ARGV[2])
+        redis.call('PEXPIRE', KEYS[i + 1], ARGV[2])
+        refreshed = refreshed + 1
+    elseif not node then
+        redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2])
+        refreshed = refreshed + 1
+    end
+end
+return refreshed
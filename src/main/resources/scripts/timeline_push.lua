@@ -0,0 +1,19 @@
+-- Adds posts to a timeline that already exists and trims it to the newest entries.
+-- A missing timeline is left alone: it is built from MongoDB on its next read, and creating it
+-- here would make a partial timeline look complete.
+--
+-- KEYS[1] = timeline of the user
+-- ARGV[1] = max timeline length
+-- ARGV[2..] = score, post id pairs (score = createdAt in epoch millis)
+--
+-- Reply: 1 if the timeline existed and was updated, 0 otherwise
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+for i = 2, #ARGV, 2 do
+    redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[1]) + 1))
+return 1
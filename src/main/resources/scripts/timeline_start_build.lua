@@ -0,0 +1,16 @@
+-- Creates a timeline that is about to be built from MongoDB, holding only the building marker.
+-- Posts pushed while the build reads MongoDB land in it instead of being skipped, and readers
+-- see the marker and fall back to MongoDB until the build completes.
+--
+-- KEYS[1] = timeline of the user
+-- ARGV[1] = building marker member
+-- ARGV[2] = seconds until an unfinished build is dropped
+--
+-- Reply: 1 if the build was started, 0 if the timeline already exists
+
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('ZADD', KEYS[1], '+inf', ARGV[1])
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return 1
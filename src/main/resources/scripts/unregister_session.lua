@@ -0,0 +1,14 @@
+-- Removes a user's node registration and chat presence, but only if the registration still
+-- points at the calling node. If the user has meanwhile reconnected to another node, that newer
+-- registration and its presence are kept.
+--
+-- KEYS[1] = node registration of the user, KEYS[2] = chat presence of the user
+-- ARGV[1] = id of the calling node
+--
+-- Reply: 1 if the registration was removed, 0 otherwise
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    redis.call('DEL', KEYS[2])
+    return redis.call('DEL', KEYS[1])
+end
+return 0
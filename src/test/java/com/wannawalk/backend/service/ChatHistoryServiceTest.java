@@ -0,0 +1,125 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.errors.InvalidCursorException;
+import com.wannawalk.backend.model.ChatMessage;
+import com.wannawalk.backend.model.ChatMessageBucket;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * History in {@code buckets} storage mode: pages are whole buckets sorted newest first, a cursor
+ * inside a bucket cuts it, and once the buckets run out the page continues from messages stored
+ * one per document.
+ */
+class ChatHistoryServiceTest {
+
+    private static final String CONVERSATION = ChatMessage.conversationIdOf("user-1", "user-2");
+    private static final Duration BUCKET_SIZE = Duration.ofMinutes(60);
+    private static final Instant HOUR = Instant.parse("2024-05-01T10:00:00Z");
+
+    private final ChatHistoryService service = new ChatHistoryService();
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "storageMode", "buckets");
+        ReflectionTestUtils.setField(service, "bucketMinutes", BUCKET_SIZE.toMinutes());
+    }
+
+    @Test
+    void pageHoldsWholeBucketsNewestFirst() {
+        ChatMessage first = message(HOUR.plusSeconds(60));
+        ChatMessage second = message(HOUR.plusSeconds(120));
+        ChatMessage third = message(HOUR.plusSeconds(180));
+        // Append order differs from timestamp order
+        ChatMessageBucket newest = bucket(HOUR, third, first, second);
+        ChatMessageBucket older = bucket(HOUR.minus(BUCKET_SIZE), message(HOUR.minusSeconds(60)));
+        when(mongoTemplate.stream(any(Query.class), eq(ChatMessageBucket.class))).thenReturn(Stream.of(newest, older));
+
+        Slice<ChatMessage> page = service.getHistory("user-1", "user-2", null, 2);
+
+        assertEquals(List.of(third, second, first), page.getContent());
+        assertTrue(page.hasNext());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(ChatMessage.class));
+    }
+
+    @Test
+    void cursorCutsItsBucket() {
+        ChatMessage first = message(HOUR.plusSeconds(60));
+        ChatMessage second = message(HOUR.plusSeconds(120));
+        ChatMessage third = message(HOUR.plusSeconds(180));
+        ChatMessageBucket bucket = bucket(HOUR, first, second, third);
+        when(mongoTemplate.findById(bucket.getId(), ChatMessageBucket.class)).thenReturn(bucket);
+        when(mongoTemplate.stream(any(Query.class), eq(ChatMessageBucket.class))).thenReturn(Stream.of(bucket));
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessage.class))).thenReturn(new ArrayList<>());
+
+        Slice<ChatMessage> page = service.getHistory("user-1", "user-2", third.getId(), 5);
+
+        assertEquals(List.of(second, first), page.getContent());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void continuesWithDocumentsOnceBucketsRunOut() {
+        ChatMessage bucketed = message(HOUR.plusSeconds(60));
+        ChatMessage olderA = message(HOUR.minusSeconds(60));
+        ChatMessage olderB = message(HOUR.minusSeconds(120));
+        ChatMessage olderC = message(HOUR.minusSeconds(180));
+        when(mongoTemplate.stream(any(Query.class), eq(ChatMessageBucket.class)))
+                .thenReturn(Stream.of(bucket(HOUR, bucketed)));
+        // Asked for the two missing messages plus one to tell whether there are more
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessage.class))).thenReturn(List.of(olderA, olderB, olderC));
+
+        Slice<ChatMessage> page = service.getHistory("user-1", "user-2", null, 3);
+
+        assertEquals(List.of(bucketed, olderA, olderB), page.getContent());
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void rejectsCursorsThatAreNoMessageId() {
+        assertThrows(InvalidCursorException.class, () -> service.getHistory("user-1", "user-2", "yesterday", 3));
+    }
+
+    private static ChatMessage message(Instant timestamp) {
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId(Date.from(timestamp)).toHexString());
+        message.setConversationId(CONVERSATION);
+        message.setTimestamp(timestamp);
+        return message;
+    }
+
+    private static ChatMessageBucket bucket(Instant start, ChatMessage... messages) {
+        ChatMessageBucket bucket = new ChatMessageBucket();
+        bucket.setId(ChatMessageBucket.idOf(CONVERSATION, start));
+        bucket.setConversationId(CONVERSATION);
+        bucket.setBucketStart(start);
+        bucket.setMessages(new ArrayList<>(List.of(messages)));
+        return bucket;
+    }
+}
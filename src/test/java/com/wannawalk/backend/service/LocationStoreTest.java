@@ -0,0 +1,90 @@
+package com.wannawalk.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The geo cells a radius search reads must hold every user inside the search ring, whatever the
+ * ring's position; a missing cell silently drops those users from the match deck.
+ */
+class LocationStoreTest {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final LocationStore store = new LocationStore();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(store, "cellPrecision", 4);
+    }
+
+    @Test
+    void cellsAreStandardGeohashes() {
+        assertEquals("ezs4", store.cellOf(-5.6, 42.6));
+        assertEquals("u33d", store.cellOf(13.4050, 52.5200));
+        // Longitudes past the antimeridian wrap around
+        assertEquals(store.cellOf(-179.5, 10), store.cellOf(180.5, 10));
+    }
+
+    @Test
+    void coversTheWholeCircle() {
+        Point origin = new Point(23.3219, 42.6977);
+        Collection<String> cells = store.coveringCells(origin, 0, 50);
+        assertTrue(cells.contains(store.cellOf(origin.getX(), origin.getY())));
+        assertCovered(cells, origin, 0, 50);
+    }
+
+    @Test
+    void coversCirclesAcrossTheAntimeridian() {
+        Point origin = new Point(179.9, -16.5);
+        Collection<String> cells = store.coveringCells(origin, 0, 40);
+        assertCovered(cells, origin, 0, 40);
+        assertTrue(cells.contains(store.cellOf(-179.9, -16.5)));
+    }
+
+    @Test
+    void skipsCellsInsideTheInnerRadius() {
+        Point origin = new Point(23.3219, 42.6977);
+        Collection<String> ring = store.coveringCells(origin, 60, 100);
+        assertFalse(ring.contains(store.cellOf(origin.getX(), origin.getY())));
+        assertTrue(ring.size() < store.coveringCells(origin, 0, 100).size());
+        assertCovered(ring, origin, 60, 100);
+    }
+
+    @Test
+    void rejectsRadiiThatNeedTooManyCells() {
+        assertThrows(IllegalArgumentException.class, () -> store.coveringCells(new Point(0, 0), 0, 5000));
+    }
+
+    // Samples points between the two radii in every direction and checks their cells are read
+    private void assertCovered(Collection<String> cells, Point origin, double minRadiusKm, double radiusKm) {
+        for (double distance = minRadiusKm; distance <= radiusKm; distance += (radiusKm - minRadiusKm) / 10) {
+            for (int bearing = 0; bearing < 360; bearing += 5) {
+                Point point = destination(origin, distance, bearing);
+                String cell = store.cellOf(point.getX(), point.getY());
+                assertTrue(cells.contains(cell), "cell " + cell + " of " + point + " (" + distance + " km) not covered");
+            }
+        }
+    }
+
+    private static Point destination(Point origin, double distanceKm, double bearingDegrees) {
+        double angular = distanceKm / EARTH_RADIUS_KM;
+        double bearing = Math.toRadians(bearingDegrees);
+        double lat1 = Math.toRadians(origin.getY());
+        double lon1 = Math.toRadians(origin.getX());
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(angular)
+                + Math.cos(lat1) * Math.sin(angular) * Math.cos(bearing));
+        double lon2 = lon1 + Math.atan2(Math.sin(bearing) * Math.sin(angular) * Math.cos(lat1),
+                Math.cos(angular) - Math.sin(lat1) * Math.sin(lat2));
+        return new Point(Math.toDegrees(lon2), Math.toDegrees(lat2));
+    }
+}
@@ -0,0 +1,42 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.errors.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Match page cursors round-trip, and cursors from before the rank was added still parse.
+ */
+class MatchCursorTest {
+
+    @Test
+    void roundTrips() {
+        MatchService.MatchCursor cursor = new MatchService.MatchCursor(1.25, "507f1f77bcf86cd799439011", 42);
+        String encoded = MatchService.encodeCursor(cursor);
+        assertEquals("1.25:507f1f77bcf86cd799439011:42", encoded);
+        assertEquals(cursor, MatchService.parseCursor(encoded));
+    }
+
+    @Test
+    void cursorWithoutRankStartsAtRankZero() {
+        assertEquals(new MatchService.MatchCursor(0.5, "user-1", 0), MatchService.parseCursor("0.5:user-1"));
+        assertEquals(new MatchService.MatchCursor(0.5, "user-1", 0), MatchService.parseCursor("0.5:user-1:-3"));
+    }
+
+    @Test
+    void missingCursorIsTheFirstPage() {
+        assertNull(MatchService.parseCursor(null));
+        assertNull(MatchService.parseCursor(" "));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(InvalidCursorException.class, () -> MatchService.parseCursor("0.5"));
+        assertThrows(InvalidCursorException.class, () -> MatchService.parseCursor("near:user-1:3"));
+        assertThrows(InvalidCursorException.class, () -> MatchService.parseCursor("0.5:user-1:third"));
+        assertThrows(InvalidCursorException.class, () -> MatchService.parseCursor("0.5:user-1:3:4"));
+    }
+}
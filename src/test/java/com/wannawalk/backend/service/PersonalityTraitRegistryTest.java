@@ -0,0 +1,56 @@
+package com.wannawalk.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins trait bit positions to the configured order. Masks are stored on match profiles, so a
+ * changed position silently changes what every stored mask means.
+ */
+class PersonalityTraitRegistryTest {
+
+    private final PersonalityTraitRegistry registry =
+            new PersonalityTraitRegistry(List.of("Playful", " Energetic ", "Calm"));
+
+    @Test
+    void bitPositionsFollowTheConfiguredOrder() {
+        assertEquals(0b001L, registry.maskOf(List.of("Playful")));
+        // Configured names are trimmed
+        assertEquals(0b010L, registry.maskOf(List.of("Energetic")));
+        assertEquals(0b101L, registry.maskOf(List.of("Calm", "Playful")));
+    }
+
+    @Test
+    void unknownTraitsAreLeftOutOfTheMask() {
+        assertEquals(0b100L, registry.maskOf(List.of("Calm", "Grumpy")));
+        assertEquals(0L, registry.maskOf(null));
+        assertEquals(0L, registry.maskOf(Collections.emptyList()));
+    }
+
+    @Test
+    void fullyRegisteredOnlyWithoutUnknownTraits() {
+        assertTrue(registry.isFullyRegistered(List.of("Calm", "Playful")));
+        assertTrue(registry.isFullyRegistered(null));
+        assertFalse(registry.isFullyRegistered(List.of("Calm", "Grumpy")));
+    }
+
+    @Test
+    void sixtyFourTraitsFitInAMask() {
+        List<String> traits = new ArrayList<>();
+        for (int i = 0; i < Long.SIZE; i++) {
+            traits.add("Trait" + i);
+        }
+        assertEquals(Long.MIN_VALUE, new PersonalityTraitRegistry(traits).maskOf(List.of("Trait63")));
+
+        traits.add("OneTooMany");
+        assertThrows(IllegalStateException.class, () -> new PersonalityTraitRegistry(traits));
+    }
+}
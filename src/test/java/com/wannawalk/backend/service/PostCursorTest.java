@@ -0,0 +1,93 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.errors.InvalidCursorException;
+import com.wannawalk.backend.service.TimelineStore.TimelineEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Post cursors round-trip, and anything the server did not issue is rejected as a bad cursor.
+ */
+class PostCursorTest {
+
+    private static final String POST_ID = "507f1f77bcf86cd799439011";
+
+    @Test
+    void feedCursorRoundTrips() {
+        TimelineEntry entry = new TimelineEntry(POST_ID, 1700000000123L);
+        String encoded = PostService.encodeCursor(entry);
+        assertEquals("1700000000123:" + POST_ID, encoded);
+        assertEquals(entry, PostService.parseCursor(encoded));
+        assertNull(PostService.parseCursor(null));
+        assertNull(PostService.parseCursor(""));
+    }
+
+    @Test
+    void rejectsMalformedFeedCursors() {
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCursor(POST_ID));
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCursor("1700000000123:not-a-post"));
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCursor("yesterday:" + POST_ID));
+    }
+
+    @Test
+    void commentCursorRoundTrips() {
+        PostService.CommentCursor cursor = new PostService.CommentCursor(POST_ID, 1700000000123L);
+        String encoded = PostService.encodeCommentCursor(cursor);
+        assertEquals("1700000000123:" + POST_ID, encoded);
+        assertEquals(cursor, PostService.parseCommentCursor(encoded));
+        assertNull(PostService.parseCommentCursor(" "));
+    }
+
+    @Test
+    void rejectsMalformedCommentCursors() {
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCommentCursor("1700000000123"));
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCommentCursor("1700000000123:comment-1"));
+        assertThrows(InvalidCursorException.class, () -> PostService.parseCommentCursor("12.5:" + POST_ID));
+    }
+
+    @Test
+    void deltaCursorRoundTripsWithSeenActivities() {
+        String otherPostId = "507f1f77bcf86cd799439012";
+        Set<String> seen = new LinkedHashSet<>(List.of(POST_ID + ".1700000000123", otherPostId + ".1699999999000"));
+        PostService.DeltaCursor cursor = new PostService.DeltaCursor(1700000000123L, POST_ID, seen);
+        String encoded = PostService.encodeDeltaCursor(cursor);
+        assertEquals("1700000000123:" + POST_ID + ":" + POST_ID + ".1700000000123," + otherPostId + ".1699999999000", encoded);
+        assertEquals(cursor, PostService.parseDeltaCursor(encoded));
+    }
+
+    @Test
+    void deltaCursorWithoutSeenActivities() {
+        assertEquals(new PostService.DeltaCursor(1700000000123L, POST_ID, Set.of()),
+                PostService.parseDeltaCursor("1700000000123:" + POST_ID));
+        assertEquals(new PostService.DeltaCursor(1700000000123L, POST_ID, Set.of()),
+                PostService.parseDeltaCursor("1700000000123:" + POST_ID + ":"));
+        assertNull(PostService.parseDeltaCursor(null));
+    }
+
+    @Test
+    void deltaCursorDropsSeenPostsWithoutActivityTime() {
+        // Older cursors listed bare post ids; those posts are handed out once more
+        PostService.DeltaCursor cursor = PostService.parseDeltaCursor(
+                "1700000000123:" + POST_ID + ":" + POST_ID + "," + POST_ID + ".1700000000100");
+        assertEquals(Set.of(POST_ID + ".1700000000100"), cursor.seen());
+    }
+
+    @Test
+    void rejectsMalformedDeltaCursors() {
+        assertThrows(InvalidCursorException.class, () -> PostService.parseDeltaCursor("1700000000123"));
+        assertThrows(InvalidCursorException.class, () -> PostService.parseDeltaCursor("now:" + POST_ID));
+        assertThrows(InvalidCursorException.class,
+                () -> PostService.parseDeltaCursor("1700000000123:" + POST_ID + ":post-1.1700000000000"));
+        assertThrows(InvalidCursorException.class,
+                () -> PostService.parseDeltaCursor("1700000000123:" + POST_ID + ":" + POST_ID + ".later"));
+        assertThrows(InvalidCursorException.class,
+                () -> PostService.parseDeltaCursor("1700000000123:" + POST_ID + ":" + POST_ID + ".1:extra"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.wannawalk.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pins the swipe filter bit positions. Filters already stored in Redis were built with these
+ * positions; if they change, swiped users silently come back into decks.
+ */
+class SwipeFilterTest {
+
+    @Test
+    void positionsMatchExistingFilters() {
+        assertArrayEquals(new long[]{66553, 126103, 54581, 114131, 42609},
+                SwipeFilter.positions("507f1f77bcf86cd799439011", 131072, 5));
+        assertArrayEquals(new long[]{130629, 49233, 98909, 17513, 67189},
+                SwipeFilter.positions("user-1", 131072, 5));
+    }
+
+    @Test
+    void positionsDependOnFilterSize() {
+        assertArrayEquals(new long[]{241, 535, 829}, SwipeFilter.positions("507f1f77bcf86cd799439011", 1000, 3));
+    }
+
+    @Test
+    void positionsForTheLargestSizeReduceToSmallerFilters() {
+        long[] largest = SwipeFilter.positions("507f1f77bcf86cd799439011", 1 << 24, 5);
+        long[] small = SwipeFilter.positions("507f1f77bcf86cd799439011", 16384, 5);
+        for (int i = 0; i < largest.length; i++) {
+            assertEquals(small[i], largest[i] % 16384);
+        }
+    }
+
+    @Test
+    void sizeDoublesWithTheSwipesUpToTheMaximum() {
+        assertEquals(SwipeFilter.MIN_BITS, SwipeFilter.sizeFor(0, 10, 1 << 24));
+        assertEquals(16384, SwipeFilter.sizeFor(500, 10, 1 << 24));
+        assertEquals(32768, SwipeFilter.sizeFor(1000, 10, 1 << 24));
+        assertEquals(1 << 24, SwipeFilter.sizeFor(10_000_000, 10, 1 << 24));
+        // A maximum that is no power of two is rounded down to one
+        assertEquals(65536, SwipeFilter.sizeFor(10_000_000, 10, 100_000));
+    }
+}
@@ -0,0 +1,116 @@
+package com.wannawalk.backend.service;
+
+import com.wannawalk.backend.service.TimelineStore.TimelineEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Paging over a stored timeline: markers are never handed out, a timeline being built reads as
+ * missing, and a page after a cursor whose post was removed resumes right below it.
+ */
+class TimelineStoreTest {
+
+    private static final String KEY = "timeline:user-1";
+
+    private final TimelineStore store = new TimelineStore();
+    private RedisTemplate<String, String> redisTemplate;
+    private ZSetOperations<String, String> zSet;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        ReflectionTestUtils.setField(store, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(store, "maxLength", 3);
+    }
+
+    @Test
+    void firstPageLeavesOutTheEndMarker() {
+        when(zSet.reverseRangeWithScores(KEY, 0, 2)).thenReturn(tuples(
+                TypedTuple.of("post-b", 20.0), TypedTuple.of("post-a", 10.0), TypedTuple.of("#end", 0.0)));
+
+        assertEquals(List.of(new TimelineEntry("post-b", 20), new TimelineEntry("post-a", 10)),
+                store.readPage("user-1", null, 3));
+    }
+
+    @Test
+    void timelineBeingBuiltReadsAsMissing() {
+        when(zSet.reverseRangeWithScores(KEY, 0, 2)).thenReturn(tuples(
+                TypedTuple.of("#building", Double.POSITIVE_INFINITY), TypedTuple.of("post-b", 20.0)));
+
+        assertNull(store.readPage("user-1", null, 3));
+    }
+
+    @Test
+    void missingTimelineReadsAsMissing() {
+        when(zSet.reverseRangeWithScores(KEY, 0, 2)).thenReturn(new LinkedHashSet<>());
+
+        assertNull(store.readPage("user-1", null, 3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nextPageStartsBelowTheCursorsRank() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(Arrays.asList(tuples(TypedTuple.of("post-c", 30.0)), 1L));
+        when(zSet.reverseRangeWithScores(KEY, 2, 3)).thenReturn(tuples(
+                TypedTuple.of("post-a", 10.0), TypedTuple.of("#end", 0.0)));
+
+        assertEquals(List.of(new TimelineEntry("post-a", 10)),
+                store.readPage("user-1", new TimelineEntry("post-b", 20), 2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nextPageAfterARemovedPostSkipsThoseAtOrAboveIt() {
+        // post-m was removed from the timeline; post-n shares its time but sorts above it
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(Arrays.asList(tuples(TypedTuple.of("post-z", 30.0)), null));
+        when(zSet.count(KEY, 20.0, 20.0)).thenReturn(2L);
+        when(zSet.reverseRangeByScoreWithScores(KEY, Double.NEGATIVE_INFINITY, 20.0, 0, 4)).thenReturn(tuples(
+                TypedTuple.of("post-n", 20.0), TypedTuple.of("post-l", 20.0), TypedTuple.of("post-a", 10.0),
+                TypedTuple.of("#end", 0.0)));
+
+        assertEquals(List.of(new TimelineEntry("post-l", 20), new TimelineEntry("post-a", 10)),
+                store.readPage("user-1", new TimelineEntry("post-m", 20), 2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void trimmedOnceTheEndMarkerIsGone() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(null, 3L));
+        assertTrue(store.isTrimmed("user-1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void notTrimmedWhileTheEndMarkerIsThere() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(0.0, 3L));
+        assertFalse(store.isTrimmed("user-1"));
+    }
+
+    @SafeVarargs
+    private static Set<TypedTuple<String>> tuples(TypedTuple<String>... tuples) {
+        return new LinkedHashSet<>(Arrays.asList(tuples));
+    }
+}